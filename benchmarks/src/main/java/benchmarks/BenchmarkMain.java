@@ -0,0 +1,22 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar: the regular JMH command line, with the GC profiler on
+// unless another profiler is asked for, so every result comes with its allocation rate
+// (gc.alloc.rate.norm = bytes per op).
+//
+// Usage: java -jar target/benchmarks.jar [JMH options] [benchmark regex]
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-prof") && !arguments.contains("-h") && !arguments.contains("-l")) {
+            arguments.add(0, "-prof");
+            arguments.add(1, "gc");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
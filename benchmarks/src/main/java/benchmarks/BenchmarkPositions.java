@@ -0,0 +1,42 @@
+package benchmarks;
+
+import engine.Position;
+
+// The fixed positions every benchmark runs over, so results stay comparable between runs
+public class BenchmarkPositions {
+
+    public static final String[] MIDDLEGAME = {
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2Q1RK1 b - - 0 10",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r1bq1rk1/pp3ppp/2nbpn2/3p4/2PP4/1PN1PN2/P4PPP/R1BQKB1R w KQ - 1 8",
+    };
+
+    public static final String[] ENDGAME = {
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+            "8/5pk1/6p1/8/3R4/6P1/5PKP/r7 b - - 0 40",
+            "8/8/1p3k2/p1p2p2/P1P2P2/1P3K2/8/8 w - - 0 45",
+            "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1",
+    };
+
+    public static String[] fens(String set) {
+        switch (set) {
+            case "middlegame": return MIDDLEGAME;
+            case "endgame": return ENDGAME;
+            default: throw new IllegalArgumentException("Unknown position set: " + set);
+        }
+    }
+
+    public static Position[] positions(String set) {
+        String[] fens = fens(set);
+        Position[] positions = new Position[fens.length];
+        for (int i = 0; i < fens.length; i++) {
+            positions[i] = new Position(fens[i]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import engine.Evaluator;
+import engine.Position;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Static evaluation, one op = every position in the set evaluated once
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    @Param({"middlegame", "endgame"})
+    public String positionSet;
+
+    private Position[] positions;
+
+    @Setup
+    public void setup() {
+        positions = BenchmarkPositions.positions(positionSet);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int sum = 0;
+        for (Position position : positions) {
+            sum += Evaluator.evaluate(position);
+        }
+        return sum;
+    }
+}
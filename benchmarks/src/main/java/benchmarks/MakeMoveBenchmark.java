@@ -0,0 +1,53 @@
+package benchmarks;
+
+import engine.GameState;
+import engine.MoveGenerator;
+import engine.MoveList;
+import engine.Position;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// makeMove/unmakeMove, one op = every legal move of every position in the set made and unmade.
+// The moves are generated in the setup, so this measures only the board update.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MakeMoveBenchmark {
+
+    @Param({"middlegame", "endgame"})
+    public String positionSet;
+
+    private Position[] positions;
+    private MoveList[] moves;
+    private final GameState saved = new GameState();
+
+    @Setup
+    public void setup() {
+        positions = BenchmarkPositions.positions(positionSet);
+        moves = new MoveList[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            moves[i] = new MoveList();
+            MoveGenerator.generateLegalMoves(positions[i], moves[i]);
+        }
+    }
+
+    @Benchmark
+    public long makeUnmake() {
+        long hashes = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Position position = positions[i];
+            MoveList list = moves[i];
+            for (int j = 0; j < list.size; j++) {
+                int move = list.get(j);
+                position.makeMove(move, saved);
+                hashes += position.hash;
+                position.unmakeMove(move, saved);
+            }
+        }
+        return hashes;
+    }
+}
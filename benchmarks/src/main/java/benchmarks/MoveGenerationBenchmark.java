@@ -0,0 +1,49 @@
+package benchmarks;
+
+import engine.MoveGenerator;
+import engine.MoveList;
+import engine.Position;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Legal move generation, one op = all legal moves of every position in the set
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+    @Param({"middlegame", "endgame"})
+    public String positionSet;
+
+    private Position[] positions;
+    private final MoveList moves = new MoveList();
+
+    @Setup
+    public void setup() {
+        positions = BenchmarkPositions.positions(positionSet);
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        int total = 0;
+        for (Position position : positions) {
+            moves.clear();
+            MoveGenerator.generateLegalMoves(position, moves);
+            total += moves.size;
+        }
+        return total;
+    }
+
+    // The Move object adapter the GUI uses, for comparison
+    @Benchmark
+    public void generateLegalMoveObjects(Blackhole blackhole) {
+        for (Position position : positions) {
+            blackhole.consume(MoveGenerator.generateLegalMoves(position));
+        }
+    }
+}
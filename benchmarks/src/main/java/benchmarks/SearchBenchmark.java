@@ -0,0 +1,43 @@
+package benchmarks;
+
+import engine.Move;
+import engine.Position;
+import engine.Search;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Single threaded fixed depth search, one op = every position in the set searched from an
+// empty hash table, so every op searches exactly the same tree
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"middlegame", "endgame"})
+    public String positionSet;
+
+    @Param({"5"})
+    public int depth;
+
+    private String[] fens;
+
+    @Setup
+    public void setup() {
+        fens = BenchmarkPositions.fens(positionSet);
+        Search.setThreads(1);
+    }
+
+    @Benchmark
+    public void findBestMove(Blackhole blackhole) {
+        for (String fen : fens) {
+            Search.clearHash();
+            Move move = Search.findBestMove(new Position(fen), depth);
+            blackhole.consume(move);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package engine;
+
+// Every square each side attacks, by piece type, built in one pass over the pieces.
+// The evaluator fills one per evaluate call and all its terms read from it (mobility,
+// pressure on the king zone, threats), so no piece's attacks are generated twice.
+//
+// Besides the unions it keeps what the unions lose: how many squares each piece reaches
+// (mobility is counted per piece, overlapping squares count for every piece) and how many
+// pieces of each type hit the enemy king zone.
+//
+// Reused between calls (the evaluator keeps one per thread), so compute overwrites everything.
+public class AttackMap {
+
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = FILE_A << 7;
+
+    // attacks[color][type] = squares attacked by at least one piece of that type
+    public final long[][] attacks = new long[2][6];
+    // attackedBy[color] = union over all piece types
+    public final long[] attackedBy = new long[2];
+
+    // Sum over the pieces of the type of their attacked squares not holding an own piece
+    public final int[][] mobility = new int[2][6];
+    // Pieces of the type that attack the enemy king or a square next to it
+    public final int[][] kingZoneAttackers = new int[2][6];
+
+
+    public void compute(Position position) {
+        long occupied = position.occupied;
+        for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+            long[] own = position.pieces[color];
+            long notOwn = ~position.occupancy[color];
+            int enemyKingSq = Long.numberOfTrailingZeros(position.pieces[color ^ 1][Piece.KING]);
+            long enemyKingZone = Evaluator.KING_ZONE[enemyKingSq];
+
+            long[] byType = attacks[color];
+            int[] typeMobility = mobility[color];
+            int[] typeKingAttackers = kingZoneAttackers[color];
+
+            // Pawns set-wise, shifted towards the enemy side
+            long pawns = own[Piece.PAWN];
+            long pawnLeft = color == Piece.WHITE ? (pawns & ~FILE_A) << 7 : (pawns & ~FILE_A) >>> 9;
+            long pawnRight = color == Piece.WHITE ? (pawns & ~FILE_H) << 9 : (pawns & ~FILE_H) >>> 7;
+            byType[Piece.PAWN] = pawnLeft | pawnRight;
+            typeMobility[Piece.PAWN] = 0;
+            typeKingAttackers[Piece.PAWN] = 0;
+            long all = pawnLeft | pawnRight;
+
+            for (int type = Piece.KNIGHT; type <= Piece.KING; type++) {
+                long typeAttacks = 0;
+                int typeSquares = 0;
+                int typeAttackers = 0;
+
+                long pieces = own[type];
+                while (pieces != 0) {
+                    int sq = Long.numberOfTrailingZeros(pieces);
+                    pieces &= pieces - 1;
+
+                    long pieceAttacks;
+                    switch (type) {
+                        case Piece.KNIGHT: pieceAttacks = Attacks.KNIGHT[sq]; break;
+                        case Piece.BISHOP: pieceAttacks = Attacks.bishopAttacks(sq, occupied); break;
+                        case Piece.ROOK:   pieceAttacks = Attacks.rookAttacks(sq, occupied); break;
+                        case Piece.QUEEN:  pieceAttacks = Attacks.queenAttacks(sq, occupied); break;
+                        default:           pieceAttacks = Attacks.KING[sq]; break;
+                    }
+
+                    all |= pieceAttacks;
+                    typeAttacks |= pieceAttacks;
+                    typeSquares += Long.bitCount(pieceAttacks & notOwn);
+                    if ((pieceAttacks & enemyKingZone) != 0) typeAttackers++;
+                }
+
+                byType[type] = typeAttacks;
+                typeMobility[type] = typeSquares;
+                typeKingAttackers[type] = typeAttackers;
+            }
+
+            attackedBy[color] = all;
+        }
+    }
+}
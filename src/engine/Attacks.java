@@ -0,0 +1,225 @@
+package engine;
+
+// Attack sets per piece type and square, shared by move generation, evaluation
+// and static exchange evaluation.
+//
+// Sliders use magic bitboards: the blockers on a rook/bishop's lines, multiplied
+// by a "magic" number, give a unique index into a table of precomputed attack
+// sets, so a slider's attacks are one multiply and one table read.
+public class Attacks {
+
+    public static final long[] KNIGHT = new long[64];
+    public static final long[] KING = new long[64];
+    // PAWN[0][sq] = squares a white pawn on sq attacks, PAWN[1][sq] = same for black
+    public static final long[][] PAWN = new long[2][64];
+
+    // BETWEEN[a][b] = squares strictly between a and b if they share a rank, file or diagonal,
+    // LINE[a][b] = the whole line through both (edge to edge). Both are 0 for unaligned squares.
+    public static final long[][] BETWEEN = new long[64][64];
+    public static final long[][] LINE = new long[64][64];
+
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    // Magic tables. The mask has the squares whose occupancy matters (the board edge never
+    // blocks anything behind it, so it's left out); every square has its own slice of the
+    // attack table, starting at its offset. The magic numbers were found by trial with
+    // sparse random numbers; searching for them at startup takes half a second, so they're
+    // kept here and only the tables are built.
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+            0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0442000A00049020L, 0x2100040080020080L, 0x0800120400900148L, 0x0010040A00128541L,
+            0x2800804000800030L, 0x1010002000400041L, 0x4000200011004100L, 0x0610008410800800L,
+            0x0400802402800800L, 0xC100020080800400L, 0x0002000802000401L, 0x0182085882000401L,
+            0x0220204000808000L, 0x2860100040024022L, 0x0001002004110040L, 0x99101042000A0020L,
+            0x0004080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+            0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L,
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] ROOK_OFFSETS = new int[64];
+    private static final long[] ROOK_TABLE;
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+            0xA010041108003100L, 0x006082020A002900L, 0x6810010619200000L, 0x08281A0520000408L,
+            0x0001104001000400L, 0x0018901008048400L, 0x00040A0210245280L, 0x000200210808A402L,
+            0x9140048410821200L, 0x0800091010820041L, 0x20504804832202C0L, 0x0100091401081000L,
+            0x8021011140000012L, 0x0810020804450400L, 0x208B0542109008A2L, 0x0080084A08040204L,
+            0x0040E2A80811244CL, 0x2505022008008108L, 0x0430220100420040L, 0x010A040420220040L,
+            0x1105000290400000L, 0x0093001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+            0x006090002A020814L, 0x44042000240800D0L, 0x01102800040A4400L, 0x1004080080220040L,
+            0x0001001011004024L, 0x0010044000805040L, 0x0914041200820100L, 0x0004821012821480L,
+            0x0024040500C05021L, 0x0088611002080200L, 0x0116080A00040020L, 0x4000020080080080L,
+            0x2450450140840040L, 0x0000880201484100L, 0x0222020404020092L, 0x8081110600002E00L,
+            0x2842101105000801L, 0x1100809008001025L, 0x00020202221C0400L, 0x0422014022009020L,
+            0x0210046102100C00L, 0xC004008082029102L, 0x00AA461801101200L, 0x0404080080201108L,
+            0x020542108C205002L, 0x0410544804100100L, 0x0040910841100000L, 0x0400200042021100L,
+            0x00004204850400C0L, 0x0200100410A42102L, 0x1040020801210102L, 0x0805040410420000L,
+            0x2884804130100200L, 0x800C262201242000L, 0x1058000194108800L, 0x0014221054420204L,
+            0x0104000012A02200L, 0x0200881003300100L, 0x0140400202840100L, 0x0402020801010201L,
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final int[] BISHOP_OFFSETS = new int[64];
+    private static final long[] BISHOP_TABLE;
+
+    static {
+        int[][] knightJumps = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
+        int[][] kingSteps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+        for (int square = 0; square < 64; square++) {
+            KNIGHT[square] = stepAttacks(square, knightJumps);
+            KING[square] = stepAttacks(square, kingSteps);
+            PAWN[0][square] = stepAttacks(square, new int[][]{{1, -1}, {1, 1}});
+            PAWN[1][square] = stepAttacks(square, new int[][]{{-1, -1}, {-1, 1}});
+        }
+
+        ROOK_TABLE = initMagics(ROOK_DIRECTIONS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS);
+        BISHOP_TABLE = initMagics(BISHOP_DIRECTIONS, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS);
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                long aSet = 1L << a;
+                long bSet = 1L << b;
+                if (a == b) {
+                    continue;
+                }
+                if ((rookAttacks(a, 0) & bSet) != 0) {
+                    BETWEEN[a][b] = rookAttacks(a, bSet) & rookAttacks(b, aSet);
+                    LINE[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | aSet | bSet;
+                } else if ((bishopAttacks(a, 0) & bSet) != 0) {
+                    BETWEEN[a][b] = bishopAttacks(a, bSet) & bishopAttacks(b, aSet);
+                    LINE[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | aSet | bSet;
+                }
+            }
+        }
+    }
+
+
+    public static long rookAttacks(int square, long occupied) {
+        int index = (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_TABLE[ROOK_OFFSETS[square] + index];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        int index = (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+        return BISHOP_TABLE[BISHOP_OFFSETS[square] + index];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+
+    // All pieces of both colors that attack the square, given this occupancy
+    public static long attackersTo(Position position, int square, long occupied) {
+        long[] white = position.pieces[Piece.WHITE];
+        long[] black = position.pieces[Piece.BLACK];
+        long rooksQueens = white[Piece.ROOK] | black[Piece.ROOK] | white[Piece.QUEEN] | black[Piece.QUEEN];
+        long bishopsQueens = white[Piece.BISHOP] | black[Piece.BISHOP] | white[Piece.QUEEN] | black[Piece.QUEEN];
+
+        return (PAWN[1][square] & white[Piece.PAWN])   // a white pawn attacks sq if a black pawn on sq would attack it
+                | (PAWN[0][square] & black[Piece.PAWN])
+                | (KNIGHT[square] & (white[Piece.KNIGHT] | black[Piece.KNIGHT]))
+                | (KING[square] & (white[Piece.KING] | black[Piece.KING]))
+                | (rookAttacks(square, occupied) & rooksQueens)
+                | (bishopAttacks(square, occupied) & bishopsQueens);
+    }
+
+
+    private static long[] initMagics(int[][] directions, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+        int tableSize = 0;
+        for (int square = 0; square < 64; square++) {
+            masks[square] = relevantOccupancy(square, directions);
+            shifts[square] = 64 - Long.bitCount(masks[square]);
+            offsets[square] = tableSize;
+            tableSize += 1 << Long.bitCount(masks[square]);
+        }
+
+        long[] table = new long[tableSize];
+        boolean[] filled = new boolean[tableSize];
+        for (int square = 0; square < 64; square++) {
+            long mask = masks[square];
+
+            // Every subset of the mask (carry-rippler enumeration). Two subsets may share an
+            // index only if they give the same attacks, otherwise the magic is broken.
+            long subset = 0;
+            do {
+                int index = offsets[square] + (int) ((subset * magics[square]) >>> shifts[square]);
+                long attacks = slidingAttacks(square, subset, directions);
+                if (filled[index] && table[index] != attacks) {
+                    throw new IllegalStateException("Bad magic number for square " + square);
+                }
+                table[index] = attacks;
+                filled[index] = true;
+                subset = (subset - mask) & mask;
+            } while (subset != 0);
+        }
+        return table;
+    }
+
+
+    // The squares on the slider's lines that can block it, i.e. without the last square of each line
+    private static long relevantOccupancy(int square, int[][] directions) {
+        long mask = 0L;
+        int rank = square / 8;
+        int file = square % 8;
+
+        for (int[] dir : directions) {
+            int r = rank + dir[0];
+            int f = file + dir[1];
+            while (r + dir[0] >= 0 && r + dir[0] < 8 && f + dir[1] >= 0 && f + dir[1] < 8) {
+                mask |= 1L << (r * 8 + f);
+                r += dir[0];
+                f += dir[1];
+            }
+        }
+        return mask;
+    }
+
+
+    // Slow ray walk, only used to fill the magic tables
+    private static long slidingAttacks(int square, long occupied, int[][] directions) {
+        long attacks = 0L;
+        int rank = square / 8;
+        int file = square % 8;
+
+        for (int[] dir : directions) {
+            int r = rank + dir[0];
+            int f = file + dir[1];
+            while (r >= 0 && r < 8 && f >= 0 && f < 8) {
+                long target = 1L << (r * 8 + f);
+                attacks |= target;
+                if ((occupied & target) != 0) break;  // blocked
+                r += dir[0];
+                f += dir[1];
+            }
+        }
+        return attacks;
+    }
+
+
+    private static long stepAttacks(int square, int[][] steps) {
+        long attacks = 0L;
+        int rank = square / 8;
+        int file = square % 8;
+
+        for (int[] step : steps) {
+            int newRank = rank + step[0];
+            int newFile = file + step[1];
+            if (newRank >= 0 && newRank < 8 && newFile >= 0 && newFile < 8) {
+                attacks |= 1L << (newRank * 8 + newFile);
+            }
+        }
+        return attacks;
+    }
+}
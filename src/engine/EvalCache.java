@@ -0,0 +1,25 @@
+package engine;
+
+// Static evaluations by position hash. The search reaches the same positions again and
+// again through transpositions, mostly in quiescence, and evaluating is the expensive part
+// of a quiescence node, so the score is kept and looked up before evaluating.
+// Shared by all search threads, see LocklessTable.
+public class EvalCache extends LocklessTable {
+
+    // Set in every stored value, so a stored value is never 0 and 0 can mean "not found"
+    private static final long VALID = 1L << 32;
+
+
+    public EvalCache(int entries) {
+        super(entries);
+    }
+
+
+    public static long pack(int score) {
+        return VALID | (score & 0xFFFFFFFFL);
+    }
+
+    public static int score(long value) {
+        return (int) value;
+    }
+}
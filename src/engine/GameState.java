@@ -1,5 +1,7 @@
 package engine;
 
+// What makeMove can't work out backwards, saved so unmakeMove can restore it.
+// The search keeps one per ply and reuses it (see Position.makeMove(int, GameState)).
 public class GameState {
     // State that changes with each move
     boolean whiteCanCastleKingside;
@@ -8,14 +10,23 @@ public class GameState {
     boolean blackCanCastleQueenside;
     int enPassantSquare;
     int halfMoveCount;
+    long hash;
+
+    public GameState() {
+    }
 
     // Constructor to save current state
     public GameState(Position position) {
+        save(position);
+    }
+
+    public void save(Position position) {
         this.whiteCanCastleKingside = position.whiteCanCastleKingside;
         this.whiteCanCastleQueenside = position.whiteCanCastleQueenside;
         this.blackCanCastleKingside = position.blackCanCastleKingside;
         this.blackCanCastleQueenside = position.blackCanCastleQueenside;
         this.enPassantSquare = position.enPassantSquare;
         this.halfMoveCount = position.halfMoveCount;
+        this.hash = position.hash;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package engine;
+
+// Direct-mapped hash table of one 64-bit value per key, one entry per slot, always replace.
+// Shared by all search threads without locking: a slot holds the value and the key xor'ed
+// with the value, so a slot that another thread half overwrote doesn't match its key and
+// reads as a miss (the transposition table does the same with its two words).
+//
+// probe returns 0 for a miss, so what is stored must never be 0; the users pack their data
+// with a marker bit or an offset.
+public class LocklessTable {
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+
+
+    // The number of entries is rounded down to a power of two, 16 bytes each
+    public LocklessTable(long entries) {
+        int size = (int) Long.highestOneBit(Math.max(1, Math.min(entries, 1 << 30)));
+        keys = new long[size];
+        values = new long[size];
+        mask = size - 1;
+    }
+
+
+    // The stored value, or 0 if the key isn't there
+    public long probe(long key) {
+        int index = (int) key & mask;
+        long value = values[index];
+        return (keys[index] ^ value) == key ? value : 0;
+    }
+
+    public void store(long key, long value) {
+        int index = (int) key & mask;
+        keys[index] = key ^ value;
+        values[index] = value;
+    }
+
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(values, 0L);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
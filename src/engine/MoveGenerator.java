@@ -1,490 +1,440 @@
 package engine;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
+// Generates moves as packed ints (see PackedMove) into a MoveList, so no objects are
+// created per move. generateLegalMoves(Position) still hands out Move objects for the GUI.
 public class MoveGenerator {
 
-    // Precomputed knight attack patterns
-    private static final long[] KNIGHT_ATTACKS = new long[64];
-    private static final long[] KING_ATTACKS = new long[64];
-
-    // Initialize the lookup table
-    static {
-        for (int square = 0; square < 64; square++) {
-            KNIGHT_ATTACKS[square] = computeKnightAttacks(square);
-            KING_ATTACKS[square] = computeKingAttacks(square);
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = 0x8080808080808080L;
+    private static final long RANK_1 = 0x00000000000000FFL;
+    private static final long RANK_3 = 0x0000000000FF0000L;
+    private static final long RANK_6 = 0x0000FF0000000000L;
+    private static final long RANK_8 = 0xFF00000000000000L;
+
+    // Pawn geometry per color [Piece.WHITE, Piece.BLACK]. The shifts are rotations, so one code
+    // path serves both colors: a rotation left by 56 is a shift right by 8, and pawns are never
+    // on the first or last rank, so nothing wraps around into the wrong rank.
+    private static final int[] PUSH_ROTATION = {8, 56};
+    private static final int[] LEFT_CAPTURE_ROTATION = {7, 55};   // towards the a-file
+    private static final int[] RIGHT_CAPTURE_ROTATION = {9, 57};  // towards the h-file
+    private static final int[] PUSH_OFFSET = {8, -8};             // to - from
+    private static final int[] LEFT_CAPTURE_OFFSET = {7, -9};
+    private static final int[] RIGHT_CAPTURE_OFFSET = {9, -7};
+    private static final long[] DOUBLE_PUSH_RANK = {RANK_3, RANK_6};  // where a single push from the start lands
+    private static final long[] PROMOTION_RANK = {RANK_8, RANK_1};
+    private static final int[] PAWN_START_RANK = {1, 6};
+    private static final int[] KING_START = {4, 60};
+
+    // Promotion choices, best first
+    private static final int[] PROMOTION_TYPES = {Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT};
+
+
+    // Only captures and promotions (pseudo-legal), for quiescence search.
+    // Works from the enemy occupancy instead of generating everything and filtering.
+    public static void generateCaptures(Position position, MoveList moves) {
+        int color = position.sideToMove();
+        long enemyPieces = position.occupancy[color ^ 1];
+        long allPieces = position.occupied;
+
+        generatePawnCaptures(position, moves, color, enemyPieces, allPieces);
+
+        long[] own = position.pieces[color];
+        for (int type = Piece.KNIGHT; type <= Piece.KING; type++) {
+            int piece = Piece.code(color, type);
+            long pieces = own[type];
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                addCaptures(position, moves, from, piece, attacks(type, from, allPieces) & enemyPieces);
+            }
         }
     }
 
 
-    public static List<Move> generateMoves(Position position) {
-        List<Move> moves = new ArrayList<>();
-        boolean isWhite = position.isWhiteTurn;
-        generateKnightMoves(position, moves, isWhite);
-        generateKingMoves(position, moves, isWhite);
-        generatePawnMoves(position, moves, isWhite);
-        generateRookMoves(position, moves, isWhite);
-        generateBishopMoves(position, moves, isWhite);
-        generateQueenMoves(position, moves, isWhite);
-        generateCastlingMoves(position, moves, isWhite);
-        return moves;
-    }
-
-
-
-    public static List<Move> generateLegalMoves(Position position) {
-        // 1. Generate all pseudo-legal moves
-        List<Move> pseudoLegalMoves =generateMoves(position);
-        List<Move> legalMoves = new ArrayList<>();
-
-        boolean isWhite = position.isWhiteTurn;
-
-        // 2. Filter out moves that leave king in check
-        for (Move move : pseudoLegalMoves) {
-            // Try the move
-            GameState saved = position.makeMove(move);
-
-            // Is our king in check after this move?
-            if (!position.isKingInCheck(isWhite)) {
-                legalMoves.add(move);  // Legal!
+    // The other half of generateCaptures: moves that neither capture nor promote (pseudo-legal)
+    public static void generateQuiets(Position position, MoveList moves) {
+        int color = position.sideToMove();
+        long allPieces = position.occupied;
+        long emptySquares = ~allPieces;
+
+        // Pawn pushes, set-wise. Pushes to the last rank are promotions, those are captures' business.
+        long pawns = position.pieces[color][Piece.PAWN];
+        long singlePushes = Long.rotateLeft(pawns, PUSH_ROTATION[color]) & emptySquares;
+        long doublePushes = Long.rotateLeft(singlePushes & DOUBLE_PUSH_RANK[color], PUSH_ROTATION[color]) & emptySquares;
+        addPawnMoves(position, moves, color, singlePushes & ~PROMOTION_RANK[color], PUSH_OFFSET[color]);
+        addPawnMoves(position, moves, color, doublePushes, 2 * PUSH_OFFSET[color]);
+
+        long[] own = position.pieces[color];
+        for (int type = Piece.KNIGHT; type <= Piece.KING; type++) {
+            int piece = Piece.code(color, type);
+            long pieces = own[type];
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                addQuietMoves(moves, from, piece, attacks(type, from, allPieces) & emptySquares);
             }
-
-            // Undo the move
-            position.unmakeMove(move, saved);
         }
-
-        return legalMoves;
+        generateCastlingMoves(position, moves, color);
     }
 
 
+    // Turns a move key (hash move, killer move, see PackedMove.key) back into a full move,
+    // if it is pseudo-legal in this position. Returns NONE if it isn't, e.g. because
+    // the killer came from a sibling position where that piece stood somewhere else.
+    public static int pseudoLegalMove(Position position, int moveKey) {
+        if (moveKey == PackedMove.NONE) {
+            return PackedMove.NONE;
+        }
+        int from = PackedMove.from(moveKey);
+        int to = PackedMove.to(moveKey);
+        int promotion = PackedMove.promotionType(moveKey);
+        if (promotion > Piece.QUEEN) {
+            return PackedMove.NONE;
+        }
 
-    private static long computeKnightAttacks(int square) {
-        long attacks = 0L;
-        int rank = square / 8;
-        int file = square % 8;
+        int color = position.sideToMove();
+        int piece = position.pieceAt(from);
+        if (piece == Piece.NONE || Piece.color(piece) != color) {
+            return PackedMove.NONE;
+        }
 
-        // All 8 possible knight moves (L-shapes)
-        int[][] knightMoves = {
-                {2, 1}, {2, -1}, {-2, 1}, {-2, -1},
-                {1, 2}, {1, -2}, {-1, 2}, {-1, -2}
-        };
+        long allPieces = position.occupied;
+        long toMask = 1L << to;
+        if ((position.occupancy[color] & toMask) != 0) {
+            return PackedMove.NONE;
+        }
+        int captured = position.pieceAt(to);
 
-        for (int[] move : knightMoves) {
-            int newRank = rank + move[0];
-            int newFile = file + move[1];
+        int type = Piece.type(piece);
+        if (type == Piece.PAWN) {
+            return pseudoLegalPawnMove(position, color, from, to, piece, promotion, captured, allPieces);
+        }
+        if (promotion != 0) {
+            return PackedMove.NONE;
+        }
 
-            // Check if the move is within board bounds
-            if (newRank >= 0 && newRank < 8 && newFile >= 0 && newFile < 8) {
-                int targetSquare = newRank * 8 + newFile;
-                attacks |= (1L << targetSquare);
-            }
+        if (type == Piece.KING && (Attacks.KING[from] & toMask) == 0) {
+            // Might be castling, which has its own rules
+            boolean fromStartSquare = from == KING_START[color];
+            return fromStartSquare && Math.abs(to - from) == 2 ? castlingMove(position, color, to) : PackedMove.NONE;
         }
-        return attacks;
+        return (attacks(type, from, allPieces) & toMask) != 0
+                ? PackedMove.create(from, to, piece, captured) : PackedMove.NONE;
     }
 
 
-    // knight attack
-    private static void generateKnightMoves(Position position, List<Move> moves, boolean isWhite) {
-        // Get the bitboard for knights of the current color
-        long knights = isWhite ? position.whiteKnight : position.blackKnight;
-
-        // Get all friendly pieces (can't move to these squares)
-        long friendlyPieces = getFriendlyPieces(position, isWhite);
-
-        // For each knight on the board
-        while (knights != 0) {
-            int from = Long.numberOfTrailingZeros(knights);
-            knights &= knights - 1;  // Remove this knight
-
-            // Get all squares this knight can attack
-            long attacks = KNIGHT_ATTACKS[from];
-
-            // Remove friendly pieces (can't capture your own)
-            long validMoves = attacks & ~friendlyPieces;
-
-            // For each valid destination
-            while (validMoves != 0) {
-                int to = Long.numberOfTrailingZeros(validMoves);
-                validMoves &= validMoves - 1;
-
-                // Check if this square has an enemy piece
-                char captured = position.getPieceAt(to);
+    private static int pseudoLegalPawnMove(Position position, int color, int from, int to, int piece, int promotion,
+                                           int captured, long allPieces) {
+        int forward = PUSH_OFFSET[color];
+        boolean toLastRank = ((1L << to) & PROMOTION_RANK[color]) != 0;
+        if (toLastRank != (promotion != 0)) {
+            return PackedMove.NONE;
+        }
 
-                // Create the move
-                moves.add(new Move(from, to, captured));
+        if (to == from + forward) {
+            if ((allPieces & (1L << to)) != 0) return PackedMove.NONE;
+        } else if (to == from + 2 * forward) {
+            boolean onStartingRank = from / 8 == PAWN_START_RANK[color];
+            long path = (1L << (from + forward)) | (1L << to);
+            if (!onStartingRank || (allPieces & path) != 0) return PackedMove.NONE;
+        } else if ((Attacks.PAWN[color][from] & (1L << to)) != 0) {
+            if (to == position.enPassantSquare) {
+                return PackedMove.enPassant(from, to, piece, Piece.code(color ^ 1, Piece.PAWN));
+            } else if (captured == Piece.NONE) {
+                return PackedMove.NONE;
             }
+        } else {
+            return PackedMove.NONE;
         }
+
+        return promotion != 0 ? PackedMove.promotion(from, to, piece, captured, promotion)
+                : PackedMove.create(from, to, piece, captured);
     }
 
 
-    private static long computeKingAttacks(int square){
-        long attacks = 0L;
-        int rank = square / 8;
-        int file = square % 8;
+    // For code that works with Move objects (the GUI)
+    public static List<Move> generateLegalMoves(Position position) {
+        MoveList moves = new MoveList();
+        generateLegalMoves(position, moves);
 
-        int[][] kingMoves = {
-                {1,0}, {-1,0}, {0,1}, {0,-1},
-                {1,1}, {1,-1}, {-1,1}, {-1,-1}
-        };
+        List<Move> legalMoves = new ArrayList<>(moves.size);
+        for (int i = 0; i < moves.size; i++) {
+            legalMoves.add(PackedMove.toMove(moves.get(i)));
+        }
+        return legalMoves;
+    }
 
-        for (int[] move: kingMoves){
-            int newRank = rank + move[0];
-            int newFile = file + move[1];
 
-            // Check if the move is within board bounds
-            if (newRank >= 0 && newRank < 8 && newFile >= 0 && newFile < 8) {
-                int targetSquare = newRank * 8 + newFile;
-                attacks |= (1L << targetSquare);
+    // Fully legal moves, without trying them on the board. Once per node we find the
+    // pieces giving check and our pinned pieces, and then a move is legal when
+    // - a king move goes to a square the enemy doesn't attack,
+    // - in check, it captures the checker or blocks the check (double check: king moves only),
+    // - a pinned piece stays on the line between its king and the pinner.
+    // En passant and castling have their own checks.
+    public static void generateLegalMoves(Position position, MoveList moves) {
+        int color = position.sideToMove();
+        long[] own = position.pieces[color];
+        long friendlyPieces = position.occupancy[color];
+        long enemyPieces = position.occupancy[color ^ 1];
+        long allPieces = position.occupied;
+
+        long king = own[Piece.KING];
+        int kingSquare = Long.numberOfTrailingZeros(king);
+        int kingPiece = Piece.code(color, Piece.KING);
+        long checkers = Attacks.attackersTo(position, kingSquare, allPieces) & enemyPieces;
+
+        // The king is taken off the board, otherwise it would hide behind itself from a slider
+        long kingTargets = Attacks.KING[kingSquare] & ~friendlyPieces;
+        long withoutKing = allPieces ^ king;
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (!position.isSquareAttacked(to, color ^ 1, withoutKing)) {
+                moves.add(PackedMove.create(kingSquare, to, kingPiece, position.pieceAt(to)));
             }
         }
-        return attacks;
-    }
 
+        if (Long.bitCount(checkers) > 1) {
+            return;
+        }
 
-    private static void generateKingMoves(Position position, List<Move> moves, boolean isWhite){
-       long kings = isWhite? position.whiteKing : position.blackKing;
-       long friendlyPieces = getFriendlyPieces(position, isWhite);
-
-        // For each king on the board
-        while (kings != 0) {
-            int from = Long.numberOfTrailingZeros(kings);
-            kings &= kings - 1;  // Remove this king
+        // Squares other pieces may move to: anywhere, or when in check onto the checker or in between
+        long checkMask = -1L;
+        if (checkers != 0) {
+            checkMask = checkers | Attacks.BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+        } else {
+            generateCastlingMoves(position, moves, color);
+        }
+        long targetMask = ~friendlyPieces & checkMask;
+        long pinned = pinnedPieces(position, kingSquare, color, allPieces);
+
+        // Pinned knights can never move
+        for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++) {
+            int piece = Piece.code(color, type);
+            long pieces = own[type];
+            if (type == Piece.KNIGHT) {
+                pieces &= ~pinned;
+            }
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                long targets = attacks(type, from, allPieces) & targetMask;
+                if ((pinned & (1L << from)) != 0) {
+                    targets &= Attacks.LINE[kingSquare][from];
+                }
+                addCaptures(position, moves, from, piece, targets);
+            }
+        }
 
-            // Get all squares this king can attack
-            long attacks = KING_ATTACKS[from];
+        // Free pawns set-wise, pinned ones one by one along their pin line
+        long pawns = own[Piece.PAWN];
+        addLegalPawnMoves(position, moves, color, pawns & ~pinned, enemyPieces, allPieces, checkMask);
+        long pinnedPawns = pawns & pinned;
+        while (pinnedPawns != 0) {
+            int from = Long.numberOfTrailingZeros(pinnedPawns);
+            pinnedPawns &= pinnedPawns - 1;
+            addLegalPawnMoves(position, moves, color, 1L << from, enemyPieces, allPieces,
+                    checkMask & Attacks.LINE[kingSquare][from]);
+        }
 
-            // Remove friendly pieces (can't capture your own)
-            long validMoves = attacks & ~friendlyPieces;
+        if (position.enPassantSquare != -1) {
+            addLegalEnPassant(position, moves, color, kingSquare, checkers, checkMask, allPieces);
+        }
+    }
 
-            // For each valid destination
-            while (validMoves != 0) {
-                int to = Long.numberOfTrailingZeros(validMoves);
-                validMoves &= validMoves - 1;
 
-                // Check if this square has an enemy piece
-                char captured = position.getPieceAt(to);
+    // En passant takes two pawns off a line at once (and the captured one isn't on the target
+    // square), so it gets its own test: with the board as it is after the capture, no enemy
+    // slider may see our king. In check, it has to take the checking pawn or block the check.
+    private static void addLegalEnPassant(Position position, MoveList moves, int color, int kingSquare,
+                                          long checkers, long checkMask, long allPieces) {
+        int epSquare = position.enPassantSquare;
+        int capturedSquare = epSquare - PUSH_OFFSET[color];
+        if (checkers != 0 && (checkers & (1L << capturedSquare)) == 0 && (checkMask & (1L << epSquare)) == 0) {
+            return;
+        }
 
-                // Create the move
-                moves.add(new Move(from, to, captured));
+        long[] enemy = position.pieces[color ^ 1];
+        long rooksQueens = enemy[Piece.ROOK] | enemy[Piece.QUEEN];
+        long bishopsQueens = enemy[Piece.BISHOP] | enemy[Piece.QUEEN];
+        int pawn = Piece.code(color, Piece.PAWN);
+        int capturedPawn = Piece.code(color ^ 1, Piece.PAWN);
+
+        long capturers = Attacks.PAWN[color ^ 1][epSquare] & position.pieces[color][Piece.PAWN];
+        while (capturers != 0) {
+            int from = Long.numberOfTrailingZeros(capturers);
+            capturers &= capturers - 1;
+
+            long occupied = (allPieces ^ (1L << from) ^ (1L << capturedSquare)) | (1L << epSquare);
+            boolean exposed = (Attacks.rookAttacks(kingSquare, occupied) & rooksQueens) != 0
+                    || (Attacks.bishopAttacks(kingSquare, occupied) & bishopsQueens) != 0;
+            if (!exposed) {
+                moves.add(PackedMove.enPassant(from, epSquare, pawn, capturedPawn));
             }
         }
     }
 
 
-    private static long getAllPieces(Position position) {
-        return getFriendlyPieces(position, true) | getFriendlyPieces(position, false);
-    }
+    // Our pieces that are the only thing between our king and an enemy slider
+    private static long pinnedPieces(Position position, int kingSquare, int color, long allPieces) {
+        long[] enemy = position.pieces[color ^ 1];
+        long rooksQueens = enemy[Piece.ROOK] | enemy[Piece.QUEEN];
+        long bishopsQueens = enemy[Piece.BISHOP] | enemy[Piece.QUEEN];
 
+        // Enemy sliders that would hit the king on an empty board
+        long snipers = (Attacks.rookAttacks(kingSquare, 0) & rooksQueens)
+                | (Attacks.bishopAttacks(kingSquare, 0) & bishopsQueens);
 
-    //pawns
-    private static void generatePawnMoves(Position position, List<Move> moves, boolean isWhite) {
-        // Get all pawns
-        long pawns = isWhite? position.whitePawn: position.blackPawn;
-        long allPieces = getAllPieces(position);
-
-        int pushDirection = isWhite? 8: -8;
-
-        //for each pawn
-        while (pawns != 0){
-            int from = Long.numberOfTrailingZeros(pawns);
-            pawns &= pawns -1;
-
-            //1. single push
-            int to = from + pushDirection;
-            if (to >=0 && to<64){ //check bounds
-                long toMask = 1L << to;
-                if ((allPieces & toMask) == 0){ //square is empty
-                   //check if this is promotion
-                   int toRank = to/8;
-                   if ((isWhite && toRank == 7) || (!isWhite && toRank == 0)){
-                       //promotion
-                       char[] promotionPieces = isWhite? new char[]{'Q', 'R', 'B', 'N'}:
-                               new char[]{'q', 'r', 'b', 'n'};
-                       for (char piece : promotionPieces){
-                           Move move = new Move(from, to, '\0');
-                           move.setPromotion(piece);
-                           moves.add(move);
-                       }
-
-                   }else{
-                       //normal pawn push
-                       moves.add(new Move(from, to, '\0'));
-                   }
-                }
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long between = Attacks.BETWEEN[kingSquare][sniper] & allPieces;
+            if (between != 0 && (between & (between - 1)) == 0) {
+                pinned |= between & position.occupancy[color];
             }
+        }
+        return pinned;
+    }
 
-            // 2. Double push (only from starting rank)
-            int fromRank = from / 8;
-            boolean onStartingRank = (isWhite && fromRank == 1) || (!isWhite && fromRank == 6);
-
-            if (onStartingRank) {
-                int doublePushTo = from + (pushDirection * 2);  // Move 2 squares
-                int singlePushTo = from + pushDirection;         // Square in between
 
-                long doublePushMask = 1L << doublePushTo;
-                long singlePushMask = 1L << singlePushTo;
+    // Pushes and captures (no en passant) of the given pawns, only to squares in targetMask
+    private static void addLegalPawnMoves(Position position, MoveList moves, int color, long pawns,
+                                          long enemyPieces, long allPieces, long targetMask) {
+        long captureLeft = Long.rotateLeft(pawns, LEFT_CAPTURE_ROTATION[color]) & ~FILE_H;
+        long captureRight = Long.rotateLeft(pawns, RIGHT_CAPTURE_ROTATION[color]) & ~FILE_A;
+        addPawnMoves(position, moves, color, captureLeft & enemyPieces & targetMask, LEFT_CAPTURE_OFFSET[color]);
+        addPawnMoves(position, moves, color, captureRight & enemyPieces & targetMask, RIGHT_CAPTURE_OFFSET[color]);
 
-                // Both squares must be empty
-                if ((allPieces & doublePushMask) == 0 && (allPieces & singlePushMask) == 0) {
-                    moves.add(new Move(from, doublePushTo, '\0'));
-                }
-            }
+        long emptySquares = ~allPieces;
+        long singlePushes = Long.rotateLeft(pawns, PUSH_ROTATION[color]) & emptySquares;
+        long doublePushes = Long.rotateLeft(singlePushes & DOUBLE_PUSH_RANK[color], PUSH_ROTATION[color]) & emptySquares;
+        addPawnMoves(position, moves, color, singlePushes & targetMask, PUSH_OFFSET[color]);
+        addPawnMoves(position, moves, color, doublePushes & targetMask, 2 * PUSH_OFFSET[color]);
+    }
 
 
-            // 3. Diagonal captures
-            int fromFile = from % 8;
-            long enemyPieces = getFriendlyPieces(position, !isWhite);
-
-            //left capture
-            int captureLeft = from + (isWhite? 7: -9);
-            if (captureLeft >= 0 && captureLeft <64){
-                int captureLeftFile = captureLeft % 8;
-                // Check file difference is exactly 1 (prevent wrapping)
-                if (Math.abs(captureLeftFile - fromFile) == 1) {
-                    long captureMask = 1L << captureLeft;
-                    if ((enemyPieces & captureMask) != 0) {  // Enemy piece present
-                        char captured = position.getPieceAt(captureLeft);
-
-                        // Check for promotion
-                        int captureRank = captureLeft / 8;
-                        if ((isWhite && captureRank == 7) || (!isWhite && captureRank == 0)) {
-                            char[] promotionPieces = isWhite? new char[]{'Q', 'R', 'B', 'N'}:
-                                    new char[]{'q', 'r', 'b', 'n'};
-                            for (char piece : promotionPieces){
-                                Move move = new Move(from, captureLeft, captured);
-                                move.setPromotion(piece);
-                                moves.add(move);
-                            }
-                        } else {
-                            moves.add(new Move(from, captureLeft, captured));
-                        }
-                    }
-                }
+    // Pawn captures, en passant and promotions, set-wise: shift all pawns at once
+    private static void generatePawnCaptures(Position position, MoveList moves, int color,
+                                             long enemyPieces, long allPieces) {
+        long pawns = position.pieces[color][Piece.PAWN];
+
+        // Captures towards the a-file and towards the h-file
+        long captureLeft = Long.rotateLeft(pawns, LEFT_CAPTURE_ROTATION[color]) & ~FILE_H;
+        long captureRight = Long.rotateLeft(pawns, RIGHT_CAPTURE_ROTATION[color]) & ~FILE_A;
+        addPawnMoves(position, moves, color, captureLeft & enemyPieces, LEFT_CAPTURE_OFFSET[color]);
+        addPawnMoves(position, moves, color, captureRight & enemyPieces, RIGHT_CAPTURE_OFFSET[color]);
+
+        // Promotions by pushing
+        long pushes = Long.rotateLeft(pawns, PUSH_ROTATION[color]) & ~allPieces;
+        addPawnMoves(position, moves, color, pushes & PROMOTION_RANK[color], PUSH_OFFSET[color]);
+
+        if (position.enPassantSquare != -1) {
+            int epSquare = position.enPassantSquare;
+            int pawn = Piece.code(color, Piece.PAWN);
+            int capturedPawn = Piece.code(color ^ 1, Piece.PAWN);
+            long capturers = Attacks.PAWN[color ^ 1][epSquare] & pawns;
+            while (capturers != 0) {
+                int from = Long.numberOfTrailingZeros(capturers);
+                capturers &= capturers - 1;
+                moves.add(PackedMove.enPassant(from, epSquare, pawn, capturedPawn));
             }
+        }
+    }
 
-            //right capture
-            int captureRight = from + (isWhite? 9: -7);
-            if (captureRight >= 0 && captureRight <64){
-                int captureRightFile = captureRight % 8;
-                // Check file difference is exactly 1 (prevent wrapping)
-                if (Math.abs(captureRightFile - fromFile) == 1) {
-                    long captureMask = 1L << captureRight;
-                    if ((enemyPieces & captureMask) != 0) {  // Enemy piece present
-                        char captured = position.getPieceAt(captureRight);
-
-                        // Check for promotion
-                        int captureRank = captureRight / 8;
-                        if ((isWhite && captureRank == 7) || (!isWhite && captureRank == 0)) {
-                            char[] promotionPieces = isWhite? new char[]{'Q', 'R', 'B', 'N'}:
-                                    new char[]{'q', 'r', 'b', 'n'};
-                            for (char piece : promotionPieces){
-                                Move move = new Move(from, captureRight, captured);
-                                move.setPromotion(piece);
-                                moves.add(move);
-                            }
-                        } else {
-                            moves.add(new Move(from, captureRight, captured));
-                        }
-                    }
-                }
-            }
-
-
-            // 4. En passant
-            if (position.enPassantSquare != -1) {
-                int epSquare = position.enPassantSquare;
-                int epFile = epSquare % 8;
-
-                // Check if pawn can reach the en passant square (diagonally)
-                int leftCapture = from + (isWhite ? 7 : -9);
-                int rightCapture = from + (isWhite ? 9 : -7);
-
-                if (leftCapture == epSquare && Math.abs(fromFile - epFile) == 1) {
-                    // The captured pawn is NOT on epSquare, it's one rank behind
-                    int capturedPawnSquare = isWhite ? (epSquare - 8) : (epSquare + 8);
-                    char captured = position.getPieceAt(capturedPawnSquare);
-
-                    Move move = new Move(from, epSquare, captured);
-                    move.setEnPassant();
-                    moves.add(move);
-                }
-
-                if (rightCapture == epSquare && Math.abs(fromFile - epFile) == 1) {
-                    int capturedPawnSquare = isWhite ? (epSquare - 8) : (epSquare + 8);
-                    char captured = position.getPieceAt(capturedPawnSquare);
-
-                    Move move = new Move(from, epSquare, captured);
-                    move.setEnPassant();
-                    moves.add(move);
+    // Targets are the pawns' destination squares, offset is how far they moved (negative for black)
+    private static void addPawnMoves(Position position, MoveList moves, int color, long targets, int offset) {
+        int pawn = Piece.code(color, Piece.PAWN);
+        long promotionRank = PROMOTION_RANK[color];
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            int from = to - offset;
+            int captured = position.pieceAt(to);
+
+            if (((1L << to) & promotionRank) != 0) {
+                for (int type : PROMOTION_TYPES) {
+                    moves.add(PackedMove.promotion(from, to, pawn, captured, type));
                 }
+            } else {
+                moves.add(PackedMove.create(from, to, pawn, captured));
             }
-
         }
     }
 
-
-
-    //sliding pieces (rook, queen, bishop)
-    private static void generateRookMoves(Position position, List<Move> moves, boolean isWhite) {
-        long rooks = isWhite ? position.whiteRook : position.blackRook;
-        long friendlyPieces = getFriendlyPieces(position, isWhite);
-        long allPieces = getAllPieces(position);
-
-        while (rooks != 0) {
-            int from = Long.numberOfTrailingZeros(rooks);
-            rooks &= rooks - 1;
-
-            // Generate moves in 4 directions: North, South, East, West
-            generateSlidingMoves(from, moves, position, friendlyPieces, allPieces,
-                    new int[]{8, -8, 1, -1});  // Direction offsets
+    private static void addQuietMoves(MoveList moves, int from, int piece, long targets) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves.add(PackedMove.create(from, to, piece, Piece.NONE));
         }
     }
 
-
-    private static void generateBishopMoves(Position position, List<Move> moves, boolean isWhite) {
-        long bishops = isWhite ? position.whiteBishop : position.blackBishop;
-        long friendlyPieces = getFriendlyPieces(position, isWhite);
-        long allPieces = getAllPieces(position);
-
-        while (bishops != 0) {
-            int from = Long.numberOfTrailingZeros(bishops);
-            bishops &= bishops - 1;
-
-            // Generate moves in 4 diagonal directions
-            generateSlidingMoves(from, moves, position, friendlyPieces, allPieces,
-                    new int[]{9, 7, -7, -9});  // Northeast, Northwest, Southeast, Southwest
+    // Targets may be empty squares too
+    private static void addCaptures(Position position, MoveList moves, int from, int piece, long targets) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves.add(PackedMove.create(from, to, piece, position.pieceAt(to)));
         }
     }
 
-    private static void generateQueenMoves(Position position, List<Move> moves, boolean isWhite) {
-        long queens = isWhite ? position.whiteQueen : position.blackQueen;
-        long friendlyPieces = getFriendlyPieces(position, isWhite);
-        long allPieces = getAllPieces(position);
-
-        while (queens != 0) {
-            int from = Long.numberOfTrailingZeros(queens);
-            queens &= queens - 1;
 
-            // Queen = Rook + Bishop (8 directions)
-            generateSlidingMoves(from, moves, position, friendlyPieces, allPieces,
-                    new int[]{8, -8, 1, -1, 9, 7, -7, -9});  // All 8 directions
+    // Squares a knight, bishop, rook, queen or king on the square attacks
+    private static long attacks(int type, int square, long allPieces) {
+        switch (type) {
+            case Piece.KNIGHT: return Attacks.KNIGHT[square];
+            case Piece.BISHOP: return Attacks.bishopAttacks(square, allPieces);
+            case Piece.ROOK: return Attacks.rookAttacks(square, allPieces);
+            case Piece.QUEEN: return Attacks.queenAttacks(square, allPieces);
+            default: return Attacks.KING[square];
         }
     }
 
 
-    //generate sliding moves function
-    private static void generateSlidingMoves(int from, List<Move> moves, Position position,
-                                             long friendlyPieces, long allPieces, int[] directions) {
-
-        for (int dir : directions) {
-            int to = from + dir;
-
-            while (true) {
-                // Bounds check
-                if (to < 0 || to >= 64) break;
-
-                // Prevent wrapping for horizontal moves
-                int toFile = to % 8;
-                int prevFile = (to - dir) % 8;  // File of the previous square
-                if (dir == 1 && toFile != prevFile + 1) break;  // Moving right
-                if (dir == -1 && toFile != prevFile - 1) break; // Moving left
-
-                // Prevent wrapping for diagonal moves
-                if (dir == 9 && toFile != prevFile + 1) break;  // Northeast
-                if (dir == 7 && toFile != prevFile - 1) break;  // Northwest
-                if (dir == -7 && toFile != prevFile + 1) break; // Southeast
-                if (dir == -9 && toFile != prevFile - 1) break; // Southwest
-
-                long toMask = 1L << to;
-
-                // Hit a friendly piece? Stop (can't move here)
-                if ((friendlyPieces & toMask) != 0) {
-                    break;
-                }
-
-                // Hit an enemy piece? Capture and stop
-                if ((allPieces & toMask) != 0) {
-                    char captured = position.getPieceAt(to);
-                    moves.add(new Move(from, to, captured));
-                    break;
-                }
-
-                // Empty square - add move and continue
-                moves.add(new Move(from, to, '\0'));
-
-                to += dir;
-            }
+    private static void generateCastlingMoves(Position position, MoveList moves, int color) {
+        int kingSquare = KING_START[color];
+        int kingside = castlingMove(position, color, kingSquare + 2);
+        if (kingside != PackedMove.NONE) {
+            moves.add(kingside);
+        }
+        int queenside = castlingMove(position, color, kingSquare - 2);
+        if (queenside != PackedMove.NONE) {
+            moves.add(queenside);
         }
     }
 
+    // Castling with the king going to kingTo (g- or c-file), or NONE if that isn't allowed now.
+    // The squares between king and rook must be empty, and the king may not castle out of,
+    // through or into check, so the move is fully legal.
+    private static int castlingMove(Position position, int color, int kingTo) {
+        int kingFrom = KING_START[color];
+        boolean kingside = kingTo > kingFrom;
 
-
-    private static void generateCastlingMoves(Position position, List<Move> moves, boolean isWhite) {
-        long allPieces = getAllPieces(position);
-
-        if (isWhite) {
-            // White kingside castling
-            if (position.whiteCanCastleKingside) {
-                // Check if f1 and g1 are empty (squares 5 and 6)
-                long f1 = 1L << 5;
-                long g1 = 1L << 6;
-                if ((allPieces & f1) == 0 && (allPieces & g1) == 0) {
-                    Move move = new Move(4, 6, '\0');  // e1 to g1
-                    move.setCastling();
-                    moves.add(move);
-                }
-            }
-
-            // White queenside castling
-            if (position.whiteCanCastleQueenside) {
-                // Check if b1, c1, and d1 are empty (squares 1, 2, 3)
-                long b1 = 1L << 1;
-                long c1 = 1L << 2;
-                long d1 = 1L << 3;
-                if ((allPieces & b1) == 0 && (allPieces & c1) == 0 && (allPieces & d1) == 0) {
-                    Move move = new Move(4, 2, '\0');  // e1 to c1
-                    move.setCastling();
-                    moves.add(move);
-                }
-            }
+        boolean allowed;
+        if (color == Piece.WHITE) {
+            allowed = kingside ? position.whiteCanCastleKingside : position.whiteCanCastleQueenside;
         } else {
-            // Black kingside castling
-            if (position.blackCanCastleKingside) {
-                // Check if f8 and g8 are empty (squares 61 and 62)
-                long f8 = 1L << 61;
-                long g8 = 1L << 62;
-                if ((allPieces & f8) == 0 && (allPieces & g8) == 0) {
-                    Move move = new Move(60, 62, '\0');  // e8 to g8
-                    move.setCastling();
-                    moves.add(move);
-                }
-            }
-
-            // Black queenside castling
-            if (position.blackCanCastleQueenside) {
-                // Check if b8, c8, and d8 are empty (squares 57, 58, 59)
-                long b8 = 1L << 57;
-                long c8 = 1L << 58;
-                long d8 = 1L << 59;
-                if ((allPieces & b8) == 0 && (allPieces & c8) == 0 && (allPieces & d8) == 0) {
-                    Move move = new Move(60, 58, '\0');  // e8 to c8
-                    move.setCastling();
-                    moves.add(move);
-                }
-            }
+            allowed = kingside ? position.blackCanCastleKingside : position.blackCanCastleQueenside;
+        }
+        if (!allowed) {
+            return PackedMove.NONE;
         }
-    }
 
+        int rookSquare = kingside ? kingFrom + 3 : kingFrom - 4;
+        if ((position.occupied & Attacks.BETWEEN[kingFrom][rookSquare]) != 0) {
+            return PackedMove.NONE;
+        }
 
-    private static long getFriendlyPieces(Position position, boolean isWhite) {
-        if (isWhite) {
-            // OR together all white piece bitboards
-            return position.whitePawn | position.whiteKnight | position.whiteBishop
-                    | position.whiteRook | position.whiteQueen | position.whiteKing;
-        } else {
-            // OR together all black piece bitboards
-            return position.blackPawn | position.blackKnight | position.blackBishop
-                    | position.blackRook | position.blackQueen | position.blackKing;
+        int enemy = color ^ 1;
+        int passedSquare = kingside ? kingFrom + 1 : kingFrom - 1;
+        if (position.isSquareAttacked(kingFrom, enemy) || position.isSquareAttacked(passedSquare, enemy)
+                || position.isSquareAttacked(kingTo, enemy)) {
+            return PackedMove.NONE;
         }
+        return PackedMove.castling(kingFrom, kingTo, Piece.code(color, Piece.KING));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package engine;
+
+// A list of packed moves (see PackedMove) in a plain int array.
+// No chess position has more than 218 legal moves, so it never has to grow.
+public class MoveList {
+
+    public static final int MAX_MOVES = 256;
+
+    public final int[] moves = new int[MAX_MOVES];
+    public int size;
+
+
+    public void add(int move) {
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,99 @@
+package engine;
+
+// What the search learned about good moves, so they can be tried first:
+// two killer moves per ply, and a history table for quiet moves, plus MVV-LVA for captures.
+// MovePicker uses it to order each stage. Every search thread has its own, killers and history are per search.
+public class MoveOrderer {
+
+    private static final int HISTORY_MAX = 300_000;
+
+    // Quiet moves that caused a beta cutoff at this ply (move keys, like the hash move)
+    private final int[][] killers;
+
+    // How often (weighted by depth) a quiet move from -> to caused a cutoff
+    private final int[][] history = new int[64][64];
+
+    private final int[] captureScores = new int[MoveList.MAX_MOVES];
+
+
+    public MoveOrderer(int maxPly) {
+        killers = new int[maxPly + 1][2];
+    }
+
+
+    public int getKiller(int ply, int slot) {
+        return killers[ply][slot];
+    }
+
+    public boolean isKiller(int moveKey, int ply) {
+        return moveKey == killers[ply][0] || moveKey == killers[ply][1];
+    }
+
+    public int historyScore(int move) {
+        return history[PackedMove.from(move)][PackedMove.to(move)];
+    }
+
+
+    // Quiescence only searches captures, so MVV-LVA is all we need there
+    public void orderCaptures(MoveList captures) {
+        for (int i = 0; i < captures.size; i++) {
+            captureScores[i] = mvvLva(captures.get(i));
+        }
+        sort(captures, captureScores);
+    }
+
+
+    // Called when a move caused a beta cutoff. Captures are already ordered well, so only quiet moves count.
+    public void recordCutoff(int move, int depth, int ply) {
+        if (!PackedMove.isQuiet(move)) {
+            return;
+        }
+
+        int key = PackedMove.key(move);
+        if (killers[ply][0] != key) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = key;
+        }
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        history[from][to] += depth * depth;
+        if (history[from][to] > HISTORY_MAX) {
+            // Scale everything down, so old information fades
+            for (int[] fromRow : history) {
+                for (int square = 0; square < 64; square++) {
+                    fromRow[square] /= 2;
+                }
+            }
+        }
+    }
+
+
+    // Most Valuable Victim - Least Valuable Attacker: PxQ first, QxP last
+    public static int mvvLva(int move) {
+        int victim = PackedMove.isCapture(move) ? Piece.type(PackedMove.captured(move)) + 1 : 0;
+        if (PackedMove.isPromotion(move)) {
+            victim += PackedMove.promotionType(move) + 1;
+        }
+        int attacker = Piece.type(PackedMove.piece(move)) + 1;
+        return victim * 10 - attacker;
+    }
+
+
+    // Insertion sort, highest score first. Move lists are short, and it keeps
+    // generation order for equal scores.
+    private static void sort(MoveList moves, int[] scores) {
+        for (int i = 1; i < moves.size; i++) {
+            int move = moves.get(i);
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves.set(j + 1, moves.get(j));
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves.set(j + 1, move);
+            scores[j + 1] = score;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package engine;
+
+// Hands out the moves of one search node one at a time, generated in stages:
+// hash move, good captures, killer moves, quiet moves, bad captures.
+// Most nodes cut off after the first move or two, and then the later stages
+// are never generated at all. Moves are pseudo-legal: the search checks
+// legality right before it searches each move.
+// The search keeps one picker per ply and starts it again with init() at every node.
+public class MovePicker {
+
+    private static final int STAGE_HASH_MOVE = 0;
+    private static final int STAGE_GENERATE_CAPTURES = 1;
+    private static final int STAGE_GOOD_CAPTURES = 2;
+    private static final int STAGE_KILLERS = 3;
+    private static final int STAGE_GENERATE_QUIETS = 4;
+    private static final int STAGE_QUIETS = 5;
+    private static final int STAGE_BAD_CAPTURES = 6;
+    private static final int STAGE_DONE = 7;
+
+    private final Position position;
+    private final MoveOrderer moveOrderer;
+    private int hashMove;
+    private int ply;
+    private int stage = STAGE_DONE;
+
+    // Moves of the current stage with their ordering scores
+    private final MoveList moves = new MoveList();
+    private final int[] scores = new int[MoveList.MAX_MOVES];
+    private int index;
+
+    private int killerIndex;
+
+    // Captures that lose material (by SEE) and under-promotions, tried last
+    private final int[] badCaptures = new int[MoveList.MAX_MOVES];
+    private int badCaptureCount;
+    private int badCaptureIndex;
+
+    private final int[] exchangeBuffer = new int[StaticExchange.MAX_EXCHANGE];
+
+
+    public MovePicker(Position position, MoveOrderer moveOrderer) {
+        this.position = position;
+        this.moveOrderer = moveOrderer;
+    }
+
+
+    // Start over for a new node
+    public void init(int hashMove, int ply) {
+        this.hashMove = hashMove;
+        this.ply = ply;
+        stage = STAGE_HASH_MOVE;
+        killerIndex = 0;
+        badCaptureCount = 0;
+        badCaptureIndex = 0;
+    }
+
+
+    // Next move to search, or PackedMove.NONE when there are none left
+    public int next() {
+        while (true) {
+            switch (stage) {
+                case STAGE_HASH_MOVE: {
+                    stage = STAGE_GENERATE_CAPTURES;
+                    int move = MoveGenerator.pseudoLegalMove(position, hashMove);
+                    if (move != PackedMove.NONE) {
+                        return move;
+                    }
+                    break;
+                }
+
+                case STAGE_GENERATE_CAPTURES:
+                    moves.clear();
+                    MoveGenerator.generateCaptures(position, moves);
+                    for (int i = 0; i < moves.size; i++) {
+                        scores[i] = MoveOrderer.mvvLva(moves.get(i));
+                    }
+                    index = 0;
+                    stage = STAGE_GOOD_CAPTURES;
+                    break;
+
+                case STAGE_GOOD_CAPTURES:
+                    while (index < moves.size) {
+                        int move = pickBest();
+                        if (PackedMove.key(move) == hashMove) {
+                            continue;
+                        }
+                        if (isUnderPromotion(move) || StaticExchange.evaluate(position, move, exchangeBuffer) < 0) {
+                            badCaptures[badCaptureCount++] = move;
+                            continue;
+                        }
+                        return move;
+                    }
+                    stage = STAGE_KILLERS;
+                    break;
+
+                case STAGE_KILLERS:
+                    while (killerIndex < 2) {
+                        int killer = moveOrderer.getKiller(ply, killerIndex++);
+                        if (killer == hashMove) {
+                            continue;
+                        }
+                        // A killer comes from a sibling node, it may not even be possible here.
+                        // If it is a capture now, the capture stages already had it.
+                        int move = MoveGenerator.pseudoLegalMove(position, killer);
+                        if (move != PackedMove.NONE && !PackedMove.isCapture(move)) {
+                            return move;
+                        }
+                    }
+                    stage = STAGE_GENERATE_QUIETS;
+                    break;
+
+                case STAGE_GENERATE_QUIETS:
+                    moves.clear();
+                    MoveGenerator.generateQuiets(position, moves);
+                    for (int i = 0; i < moves.size; i++) {
+                        scores[i] = moveOrderer.historyScore(moves.get(i));
+                    }
+                    index = 0;
+                    stage = STAGE_QUIETS;
+                    break;
+
+                case STAGE_QUIETS:
+                    while (index < moves.size) {
+                        int move = pickBest();
+                        int key = PackedMove.key(move);
+                        if (key == hashMove || moveOrderer.isKiller(key, ply)) {
+                            continue;  // already tried
+                        }
+                        return move;
+                    }
+                    stage = STAGE_BAD_CAPTURES;
+                    break;
+
+                case STAGE_BAD_CAPTURES:
+                    if (badCaptureIndex < badCaptureCount) {
+                        return badCaptures[badCaptureIndex++];
+                    }
+                    stage = STAGE_DONE;
+                    break;
+
+                default:
+                    return PackedMove.NONE;
+            }
+        }
+    }
+
+
+    // Selection sort, one step at a time: only as much sorting as moves we actually use
+    private int pickBest() {
+        int best = index;
+        for (int i = index + 1; i < moves.size; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves.get(best);
+        moves.set(best, moves.get(index));
+        moves.set(index, move);
+        scores[best] = scores[index];
+        index++;
+        return move;
+    }
+
+
+    private static boolean isUnderPromotion(int move) {
+        return PackedMove.isPromotion(move) && PackedMove.promotionType(move) != Piece.QUEEN;
+    }
+}
@@ -0,0 +1,78 @@
+package engine;
+
+// The first NNUE layer of one position: per perspective (Piece.WHITE/BLACK) the biases plus
+// the weight columns of that side's active features. Once a position has been evaluated
+// with a network, addPiece/removePiece keep it up to date, so make/unmake cost one column
+// add or subtract per piece that changes and perspective.
+//
+// A perspective's features all depend on its king square, so when its king moves the half
+// is only marked stale; the next evaluation rebuilds it from the board (see refresh).
+final class NnueAccumulator {
+
+    final NnueNetwork network;
+    final short[][] values;
+    private final boolean[] stale = {true, true};
+
+    // Scratch space for the layers after this one, so evaluating allocates nothing
+    final short[] input;
+    final short[] hidden1;
+    final short[] hidden2;
+
+
+    NnueAccumulator(NnueNetwork network) {
+        this.network = network;
+        values = new short[2][network.l1];
+        input = new short[2 * network.l1];
+        hidden1 = new short[network.l2];
+        hidden2 = new short[network.l3];
+    }
+
+    // Copy, e.g. for the position of another search thread
+    NnueAccumulator(NnueAccumulator other) {
+        this(other.network);
+        for (int perspective = Piece.WHITE; perspective <= Piece.BLACK; perspective++) {
+            System.arraycopy(other.values[perspective], 0, values[perspective], 0, network.l1);
+            stale[perspective] = other.stale[perspective];
+        }
+    }
+
+
+    // Called by Position.addPiece/removePiece, with the piece already on (or off) the board
+    void addPiece(Position position, int square, int piece) {
+        update(position, square, piece, true);
+    }
+
+    void removePiece(Position position, int square, int piece) {
+        update(position, square, piece, false);
+    }
+
+    private void update(Position position, int square, int piece, boolean add) {
+        if (Piece.type(piece) == Piece.KING) {
+            stale[Piece.color(piece)] = true;
+            return;
+        }
+        for (int perspective = Piece.WHITE; perspective <= Piece.BLACK; perspective++) {
+            if (stale[perspective]) {
+                continue;  // rebuilt before it is used anyway
+            }
+            int kingSquare = Long.numberOfTrailingZeros(position.pieces[perspective][Piece.KING]);
+            int offset = NnueNetwork.featureIndex(perspective, kingSquare, piece, square) * network.l1;
+            if (add) {
+                NnueNetwork.addColumn(values[perspective], network.transformerWeights, offset, network.l1);
+            } else {
+                NnueNetwork.subtractColumn(values[perspective], network.transformerWeights, offset, network.l1);
+            }
+        }
+    }
+
+
+    // Rebuilds the stale halves
+    void refresh(Position position) {
+        for (int perspective = Piece.WHITE; perspective <= Piece.BLACK; perspective++) {
+            if (stale[perspective]) {
+                network.refresh(values[perspective], position, perspective);
+                stale[perspective] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Efficiently updatable neural network (NNUE) evaluation, the alternative to the hand-written
+// terms in Evaluator. Load one with load(file) and switch to it with Search.useNetwork.
+//
+// Inputs are HalfKP: for each side (the "perspective") one feature per piece other than the
+// kings, given by the perspective's king square, the piece type, whether the piece is its own
+// or the enemy's, and the piece's square, all seen from that side (black mirrors the board
+// vertically): 64 * 10 * 64 features. The first layer of each half is the sum of the weight
+// columns of its active features, so it is kept in an accumulator that makeMove/unmakeMove
+// update one piece at a time (see NnueAccumulator); only a king move rebuilds its half.
+//
+// After that: both halves clipped to 0..127, side to move first, then two dense layers with
+// int8 weights and clipped ReLU, then one output. Quantized the usual way: the first layer
+// is int16, dense layer sums carry 6 fraction bits, the output divided by 16 is centipawns.
+//
+// The dense kernels use the Vector API when the JVM is started with
+// --add-modules jdk.incubator.vector, plain loops otherwise (or with -Dnnue.scalar=true).
+//
+// File layout, little endian:
+//   int magic ("NNUE"), int version (1), int inputs (40960), int l1, int l2, int l3
+//   short[l1] first layer biases, short[inputs][l1] first layer weights (one column per feature)
+//   int[l2] biases, byte[l2][2 * l1] weights
+//   int[l3] biases, byte[l3][l2] weights
+//   int output bias, byte[l3] output weights
+public class NnueNetwork {
+
+    public static final int INPUTS = 64 * 10 * 64;
+
+    private static final int MAGIC = 0x45554E4E;  // "NNUE" read little endian
+    private static final int VERSION = 1;
+
+    private static final int WEIGHT_SHIFT = 6;     // fraction bits of the dense layer sums
+    private static final int OUTPUT_SCALE = 16;    // output units per centipawn
+    private static final int CLIP = 127;           // clipped ReLU ceiling, keeps activations in int8
+    private static final int MAX_LAYER = 1 << 14;  // sanity limit on the layer sizes in a file header
+
+    static final boolean USE_VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("nnue.scalar");
+
+    // Layer sizes: l1 per perspective, then the two hidden layers
+    final int l1;
+    final int l2;
+    final int l3;
+
+    final short[] transformerBiases;
+    final short[] transformerWeights;  // [feature][l1]
+    // The int8 weights are widened to short on loading, so the kernels multiply 16-bit lanes
+    // (activations are 0..127, so a product always fits)
+    private final int[] biases1;
+    private final short[] weights1;    // [l2][2 * l1]
+    private final int[] biases2;
+    private final short[] weights2;    // [l3][l2]
+    private final int outputBias;
+    private final short[] outputWeights;
+
+
+    private NnueNetwork(ByteBuffer in, int l1, int l2, int l3) {
+        this.l1 = l1;
+        this.l2 = l2;
+        this.l3 = l3;
+        transformerBiases = readShorts(in, l1);
+        transformerWeights = readShorts(in, INPUTS * l1);
+        biases1 = readInts(in, l2);
+        weights1 = readBytes(in, l2 * 2 * l1);
+        biases2 = readInts(in, l3);
+        weights2 = readBytes(in, l3 * l2);
+        outputBias = in.getInt();
+        outputWeights = readBytes(in, l3);
+    }
+
+    public static NnueNetwork load(String file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Path.of(file))).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + ": not an NNUE network");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + ": unsupported network version " + version);
+            }
+            int inputs = in.getInt();
+            if (inputs != INPUTS) {
+                throw new IOException(file + ": " + inputs + " inputs, HalfKP has " + INPUTS);
+            }
+            int l1 = in.getInt();
+            int l2 = in.getInt();
+            int l3 = in.getInt();
+
+            // Check the sizes against the file before allocating anything, so a corrupt
+            // header can't ask for negative or huge arrays
+            if (l1 <= 0 || l2 <= 0 || l3 <= 0 || l1 > MAX_LAYER || l2 > MAX_LAYER || l3 > MAX_LAYER) {
+                throw new IOException(file + ": bad layer sizes " + l1 + ", " + l2 + ", " + l3);
+            }
+            long expected = 2L * l1 + 2L * INPUTS * l1
+                    + 4L * l2 + (long) l2 * 2 * l1
+                    + 4L * l3 + (long) l3 * l2
+                    + 4 + l3;
+            if (in.remaining() != expected) {
+                throw new IOException(file + ": layer sizes " + l1 + ", " + l2 + ", " + l3 + " need "
+                        + expected + " bytes of weights, the file has " + in.remaining());
+            }
+            return new NnueNetwork(in, l1, l2, l3);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + ": file ends in the header");
+        }
+    }
+
+
+    // Score from white's point of view, like Evaluator.evaluate
+    public int evaluate(Position position) {
+        NnueAccumulator accumulator = position.nnue;
+        if (accumulator == null || accumulator.network != this) {
+            accumulator = new NnueAccumulator(this);  // first evaluation with this network
+            position.nnue = accumulator;
+        }
+        accumulator.refresh(position);
+
+        int us = position.sideToMove();
+        short[] input = accumulator.input;
+        clippedRelu(accumulator.values[us], input, 0, l1);
+        clippedRelu(accumulator.values[us ^ 1], input, l1, l1);
+        dense(input, 2 * l1, weights1, biases1, accumulator.hidden1, l2);
+        dense(accumulator.hidden1, l2, weights2, biases2, accumulator.hidden2, l3);
+        int output = outputBias + dot(accumulator.hidden2, outputWeights, 0, l3);
+
+        int score = output / OUTPUT_SCALE;
+        return us == Piece.WHITE ? score : -score;
+    }
+
+
+    // Index of a piece's feature for one perspective
+    static int featureIndex(int perspective, int kingSquare, int piece, int square) {
+        int flip = perspective == Piece.WHITE ? 0 : 56;  // black sees the board upside down
+        int kind = Piece.type(piece) * 2 + (Piece.color(piece) == perspective ? 0 : 1);
+        return ((kingSquare ^ flip) * 10 + kind) * 64 + (square ^ flip);
+    }
+
+    // The perspective's half of the first layer from scratch
+    void refresh(short[] values, Position position, int perspective) {
+        System.arraycopy(transformerBiases, 0, values, 0, l1);
+        int kingSquare = Long.numberOfTrailingZeros(position.pieces[perspective][Piece.KING]);
+        long pieces = position.occupied
+                & ~(position.pieces[Piece.WHITE][Piece.KING] | position.pieces[Piece.BLACK][Piece.KING]);
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            int feature = featureIndex(perspective, kingSquare, position.pieceAt(square), square);
+            addColumn(values, transformerWeights, feature * l1, l1);
+        }
+    }
+
+
+    private void dense(short[] in, int inSize, short[] weights, int[] biases, short[] out, int outSize) {
+        for (int o = 0; o < outSize; o++) {
+            int sum = biases[o] + dot(in, weights, o * inSize, inSize);
+            out[o] = (short) Math.max(0, Math.min(CLIP, sum >> WEIGHT_SHIFT));
+        }
+    }
+
+
+    // Kernels: Vector API or plain loops. n is a layer size, weights start at offset.
+
+    static void addColumn(short[] values, short[] weights, int offset, int n) {
+        if (USE_VECTOR) {
+            NnueVector.addColumn(values, weights, offset, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            values[i] += weights[offset + i];
+        }
+    }
+
+    static void subtractColumn(short[] values, short[] weights, int offset, int n) {
+        if (USE_VECTOR) {
+            NnueVector.subtractColumn(values, weights, offset, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            values[i] -= weights[offset + i];
+        }
+    }
+
+    private static void clippedRelu(short[] in, short[] out, int outOffset, int n) {
+        if (USE_VECTOR) {
+            NnueVector.clippedRelu(in, out, outOffset, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            out[outOffset + i] = (short) Math.max(0, Math.min(CLIP, in[i]));
+        }
+    }
+
+    private static int dot(short[] in, short[] weights, int offset, int n) {
+        if (USE_VECTOR) {
+            return NnueVector.dot(in, weights, offset, n);
+        }
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += in[i] * weights[offset + i];
+        }
+        return sum;
+    }
+
+
+    private static short[] readShorts(ByteBuffer in, int count) {
+        short[] values = new short[count];
+        in.asShortBuffer().get(values);
+        in.position(in.position() + 2 * count);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    // int8 in the file, widened to short
+    private static short[] readBytes(ByteBuffer in, int count) {
+        short[] values = new short[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.get();
+        }
+        return values;
+    }
+}
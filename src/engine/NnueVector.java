@@ -0,0 +1,74 @@
+package engine;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API versions of NnueNetwork's kernels. Only loaded when the incubator module is
+// there (NnueNetwork.USE_VECTOR), so everything else runs without it. Same results as the
+// plain loops, including 16-bit wraparound in the accumulator.
+final class NnueVector {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;  // half the lanes
+
+    private NnueVector() {
+    }
+
+
+    static void addColumn(short[] values, short[] weights, int offset, int n) {
+        int i = 0;
+        for (; i < SHORTS.loopBound(n); i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, values, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(values, i);
+        }
+        for (; i < n; i++) {
+            values[i] += weights[offset + i];
+        }
+    }
+
+    static void subtractColumn(short[] values, short[] weights, int offset, int n) {
+        int i = 0;
+        for (; i < SHORTS.loopBound(n); i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, values, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(values, i);
+        }
+        for (; i < n; i++) {
+            values[i] -= weights[offset + i];
+        }
+    }
+
+    static void clippedRelu(short[] in, short[] out, int outOffset, int n) {
+        int i = 0;
+        for (; i < SHORTS.loopBound(n); i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, in, i)
+                    .max((short) 0)
+                    .min((short) 127)
+                    .intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            out[outOffset + i] = (short) Math.max(0, Math.min(127, in[i]));
+        }
+    }
+
+    // Activations are 0..127 and weights int8, so every product fits in a short lane;
+    // the products are widened to int before adding up
+    static int dot(short[] in, short[] weights, int offset, int n) {
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+        for (; i < SHORTS.loopBound(n); i += SHORTS.length()) {
+            ShortVector product = ShortVector.fromArray(SHORTS, in, i)
+                    .mul(ShortVector.fromArray(SHORTS, weights, offset + i));
+            sum = sum.add((IntVector) product.convertShape(VectorOperators.S2I, INTS, 0))
+                    .add((IntVector) product.convertShape(VectorOperators.S2I, INTS, 1));
+        }
+        int total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            total += in[i] * weights[offset + i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,127 @@
+package engine;
+
+// Moves packed into one int, so move lists are plain int[] and generating a move
+// allocates nothing:
+//
+//   bits  0-5   from square
+//   bits  6-11  to square
+//   bits 12-14  promotion: 0 none, else the piece type (Piece.KNIGHT .. Piece.QUEEN)
+//   bit  15     en passant
+//   bit  16     castling
+//   bits 17-20  moving piece (Piece code)
+//   bits 21-24  captured piece (Piece code, Piece.NONE if nothing)
+//
+// The low 15 bits (the key) say which move it is, the rest can be worked out from the
+// position. The transposition table and the killer table only store the key.
+// 0 is never a real move, it means "no move".
+public final class PackedMove {
+
+    public static final int NONE = 0;
+
+    private static final int KEY_MASK = 0x7FFF;
+    private static final int EN_PASSANT_FLAG = 1 << 15;
+    private static final int CASTLING_FLAG = 1 << 16;
+
+    private PackedMove() {
+    }
+
+
+    public static int create(int from, int to, int piece, int captured) {
+        return from | to << 6 | piece << 17 | captured << 21;
+    }
+
+    public static int promotion(int from, int to, int piece, int captured, int promotionType) {
+        return create(from, to, piece, captured) | promotionType << 12;
+    }
+
+    public static int enPassant(int from, int to, int piece, int captured) {
+        return create(from, to, piece, captured) | EN_PASSANT_FLAG;
+    }
+
+    public static int castling(int from, int to, int piece) {
+        return create(from, to, piece, Piece.NONE) | CASTLING_FLAG;
+    }
+
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int key(int move) {
+        return move & KEY_MASK;
+    }
+
+    public static int piece(int move) {
+        return (move >>> 17) & 15;
+    }
+
+    public static int captured(int move) {
+        return (move >>> 21) & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return captured(move) != Piece.NONE;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & (7 << 12)) != 0;
+    }
+
+    // Piece type the pawn promotes to
+    public static int promotionType(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    // Piece code of the promoted piece, in the mover's color
+    public static int promotionPiece(int move) {
+        return Piece.code(Piece.color(piece(move)), promotionType(move));
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT_FLAG) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (move & CASTLING_FLAG) != 0;
+    }
+
+    public static boolean isQuiet(int move) {
+        return !isCapture(move) && !isPromotion(move);
+    }
+
+
+    // Adapters for code that works with Move objects (the GUI)
+    public static Move toMove(int move) {
+        int captured = captured(move);
+        Move result = new Move(from(move), to(move), captured == Piece.NONE ? '\0' : Piece.toChar(captured));
+        if (isPromotion(move)) result.setPromotion(Piece.toChar(promotionPiece(move)));
+        if (isCastling(move)) result.setCastling();
+        if (isEnPassant(move)) result.setEnPassant();
+        return result;
+    }
+
+    // The position is the one the move is about to be played in
+    public static int fromMove(Position position, Move move) {
+        int piece = position.pieceAt(move.from);
+        int captured = Piece.fromChar(move.capturedPiece);
+        if (move.isPromotion) {
+            return promotion(move.from, move.to, piece, captured, Piece.type(Piece.fromChar(move.promotionPiece)));
+        }
+        if (move.isEnPassant) {
+            return enPassant(move.from, move.to, piece, captured);
+        }
+        if (move.isCastling) {
+            return castling(move.from, move.to, piece);
+        }
+        return create(move.from, move.to, piece, captured);
+    }
+
+
+    public static String toString(int move) {
+        return move == NONE ? "none" : toMove(move).toString();
+    }
+}
@@ -0,0 +1,30 @@
+package engine;
+
+// Caches evaluation terms that only depend on where the pawns are (and, for king shelter,
+// where the king is). Pawns move rarely compared to the other pieces, so nearly every
+// position the search evaluates has a pawn structure it has seen before.
+// Shared by all search threads, see LocklessTable.
+public class PawnHashTable extends LocklessTable {
+
+    // Set in every stored value, so a stored value is never 0 and 0 can mean "not found"
+    private static final long VALID = 1L << 63;
+
+
+    public PawnHashTable(int sizeKb) {
+        super((long) sizeKb * 1024 / 16);
+    }
+
+
+    // Two scores in one stored value. Scores are far smaller than 2^30 either way.
+    public static long pack(int first, int second) {
+        return VALID | (long) (second & 0x7FFFFFFF) << 31 | (first & 0x7FFFFFFF);
+    }
+
+    public static int first(long value) {
+        return (int) (value << 33 >> 33);  // sign extend the low 31 bits
+    }
+
+    public static int second(long value) {
+        return (int) (value << 2 >> 33);   // bits 31-61
+    }
+}
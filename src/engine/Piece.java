@@ -0,0 +1,76 @@
+package engine;
+
+// Small int codes for pieces, for packed moves and anything else that shouldn't work with chars.
+// code = 1 + color * 6 + type, 0 = no piece. That is the order of "PNBRQKpnbrqk".
+public final class Piece {
+
+    public static final int NONE = 0;
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    // Piece types, in order of value
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    // Piece codes
+    public static final int WHITE_PAWN = 1;
+    public static final int WHITE_KNIGHT = 2;
+    public static final int WHITE_BISHOP = 3;
+    public static final int WHITE_ROOK = 4;
+    public static final int WHITE_QUEEN = 5;
+    public static final int WHITE_KING = 6;
+    public static final int BLACK_PAWN = 7;
+    public static final int BLACK_KNIGHT = 8;
+    public static final int BLACK_BISHOP = 9;
+    public static final int BLACK_ROOK = 10;
+    public static final int BLACK_QUEEN = 11;
+    public static final int BLACK_KING = 12;
+
+    private static final String CHARS = ".PNBRQKpnbrqk";
+
+    private Piece() {
+    }
+
+
+    public static int code(int color, int type) {
+        return 1 + color * 6 + type;
+    }
+
+    public static int type(int code) {
+        return (code - 1) % 6;
+    }
+
+    public static int color(int code) {
+        return code > 6 ? BLACK : WHITE;
+    }
+
+
+    // '.' and '\0' (no piece) give NONE
+    public static int fromChar(char piece) {
+        switch (piece) {
+            case 'P': return WHITE_PAWN;
+            case 'N': return WHITE_KNIGHT;
+            case 'B': return WHITE_BISHOP;
+            case 'R': return WHITE_ROOK;
+            case 'Q': return WHITE_QUEEN;
+            case 'K': return WHITE_KING;
+            case 'p': return BLACK_PAWN;
+            case 'n': return BLACK_KNIGHT;
+            case 'b': return BLACK_BISHOP;
+            case 'r': return BLACK_ROOK;
+            case 'q': return BLACK_QUEEN;
+            case 'k': return BLACK_KING;
+            default: return NONE;
+        }
+    }
+
+    // NONE gives '.', like Position.getPieceAt for an empty square
+    public static char toChar(int code) {
+        return CHARS.charAt(code);
+    }
+}
@@ -1,22 +1,26 @@
 package engine;
 
-import java.util.*;
-
 public class Position {
 
-    // 12 bitboards
-    public long whitePawn;
-    public long whiteKing;
-    public long whiteQueen;
-    public long whiteKnight;
-    public long whiteBishop;
-    public long whiteRook;
-    public long blackPawn;
-    public long blackKing;
-    public long blackQueen;
-    public long blackKnight;
-    public long blackBishop;
-    public long blackRook;
+    // Piece bitboards, [color][type] (Piece.WHITE/BLACK, Piece.PAWN..KING), so code that
+    // works for one color works for the other by changing an index
+    public final long[][] pieces = new long[2][6];
+
+    // Occupancy per color and of the whole board, kept up to date by addPiece/removePiece
+    public final long[] occupancy = new long[2];
+    public long occupied;
+
+    // Running evaluation terms, from white's point of view, kept up to date by addPiece/removePiece
+    // so the evaluation doesn't have to scan the board for them: material, middlegame and endgame
+    // piece-square sums, and the game phase counter (non-pawn material, see Evaluator)
+    public int material;
+    public int mgPieceSquare;
+    public int egPieceSquare;
+    public int phase;
+
+    // Mailbox: the Piece code on every square (Piece.NONE if empty), kept in step with
+    // the bitboards by addPiece/removePiece, so "what is on this square" is one array read
+    private final int[] board = new int[64];
 
     // other state fields
     public boolean isWhiteTurn;
@@ -31,6 +35,16 @@ public class Position {
     //en-passant square
     public int enPassantSquare;
 
+    // Zobrist hash of the position, updated incrementally by makeMove/unmakeMove
+    public long hash;
+
+    // Zobrist hash of the pawns alone, for the pawn hash table (see Evaluator)
+    public long pawnHash;
+
+    // First NNUE layer, kept up to date by addPiece/removePiece once the position has been
+    // evaluated by a network (see NnueNetwork), null until then
+    NnueAccumulator nnue;
+
     // functions starts from here
     public Position(String fen) {
         String[] parts = fen.split(" ");
@@ -65,347 +79,347 @@ public class Position {
                 if (Character.isDigit(c)) {
                     square += (c - '0');
                 } else {
-                    // place the piece in board
-                    switch (c) {
-                        case 'P':
-                            whitePawn |= (1L << square);
-                            break;
-                        case 'p':
-                            blackPawn |= (1L << square);
-                            break;
-                        case 'R':
-                            whiteRook |= (1L << square);
-                            break;
-                        case 'r':
-                            blackRook |= (1L << square);
-                            break;
-                        case 'N':
-                            whiteKnight |= (1L << square);
-                            break;
-                        case 'n':
-                            blackKnight |= (1L << square);
-                            break;
-                        case 'B':
-                            whiteBishop |= (1L << square);
-                            break;
-                        case 'b':
-                            blackBishop |= (1L << square);
-                            break;
-                        case 'K':
-                            whiteKing |= (1L << square);
-                            break;
-                        case 'k':
-                            blackKing |= (1L << square);
-                            break;
-                        case 'Q':
-                            whiteQueen |= (1L << square);
-                            break;
-                        case 'q':
-                            blackQueen |= (1L << square);
-                            break;
-                    }
+                    addPiece(square, Piece.fromChar(c));
                     square++;
                 }
             }
         }
+
+        hash = Zobrist.compute(this);  // addPiece left it half done
+    }
+
+
+    // Copy constructor, e.g. so every search thread can have its own board
+    public Position(Position other) {
+        for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+            System.arraycopy(other.pieces[color], 0, pieces[color], 0, 6);
+        }
+        occupancy[Piece.WHITE] = other.occupancy[Piece.WHITE];
+        occupancy[Piece.BLACK] = other.occupancy[Piece.BLACK];
+        occupied = other.occupied;
+        material = other.material;
+        mgPieceSquare = other.mgPieceSquare;
+        egPieceSquare = other.egPieceSquare;
+        phase = other.phase;
+        System.arraycopy(other.board, 0, board, 0, 64);
+
+        isWhiteTurn = other.isWhiteTurn;
+        halfMoveCount = other.halfMoveCount;
+        whiteCanCastleKingside = other.whiteCanCastleKingside;
+        whiteCanCastleQueenside = other.whiteCanCastleQueenside;
+        blackCanCastleKingside = other.blackCanCastleKingside;
+        blackCanCastleQueenside = other.blackCanCastleQueenside;
+        enPassantSquare = other.enPassantSquare;
+        hash = other.hash;
+        pawnHash = other.pawnHash;
+        nnue = other.nnue == null ? null : new NnueAccumulator(other.nnue);
     }
 
 
+    // Piece code on the square, Piece.NONE if it is empty
+    public int pieceAt(int square) {
+        return board[square];
+    }
+
+    // Same as a char ('.' if empty)
     public char getPieceAt(int square) {
-        long mask = 1L << square;
+        return Piece.toChar(board[square]);
+    }
 
-        if ((whitePawn & mask) != 0) return 'P';
-        if ((blackPawn & mask) != 0) return 'p';
-        if ((whiteRook & mask) != 0) return 'R';
-        if ((blackRook & mask) != 0) return 'r';
-        if ((whiteKnight & mask) != 0) return 'N';
-        if ((blackKnight & mask) != 0) return 'n';
-        if ((whiteBishop & mask) != 0) return 'B';
-        if ((blackBishop & mask) != 0) return 'b';
-        if ((whiteKing & mask) != 0) return 'K';
-        if ((blackKing & mask) != 0) return 'k';
-        if ((whiteQueen & mask) != 0) return 'Q';
-        if ((blackQueen & mask) != 0) return 'q';
-        return '.'; //empty square
+    // Piece.WHITE or Piece.BLACK
+    public int sideToMove() {
+        return isWhiteTurn ? Piece.WHITE : Piece.BLACK;
     }
 
 
+    // For code that works with Move objects (the GUI)
     public GameState makeMove(Move move) {
+        return makeMove(PackedMove.fromMove(this, move));
+    }
+
+
+    public GameState makeMove(int move) {
+        GameState savedState = new GameState();
+        makeMove(move, savedState);
+        return savedState;
+    }
+
+
+    // Saves the state unmakeMove needs into savedState instead of allocating it
+    public void makeMove(int move, GameState savedState) {
         // 1. Save current state (for unmake)
-        GameState savedState = new GameState(this);
+        savedState.save(this);
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int piece = PackedMove.piece(move);
 
-        // 2. Get piece type at source square
-        char piece = getPieceAt(move.from);
+        // Take the old castling rights and en passant square out of the hash,
+        // the new ones are hashed back in once they are known
+        hash ^= Zobrist.castlingKey(this);
+        hash ^= Zobrist.enPassantKey(enPassantSquare);
 
-        // 3. Remove piece from source bitboard
-        removePiece(move.from, piece);
+        // 2. Remove piece from source bitboard
+        removePiece(from, piece);
 
-        // 4. Handle captures (remove captured piece)
-        if (move.capturedPiece != '\0' && move.capturedPiece != '.') {
-            if (move.isEnPassant) {
+        // 3. Handle captures (remove captured piece)
+        if (PackedMove.isCapture(move)) {
+            int captured = PackedMove.captured(move);
+            if (PackedMove.isEnPassant(move)) {
                 // En passant: captured pawn is NOT on the destination square
-                int capturedSquare = isWhiteTurn ? (move.to - 8) : (move.to + 8);
-                removePiece(capturedSquare, move.capturedPiece);
+                int capturedSquare = isWhiteTurn ? (to - 8) : (to + 8);
+                removePiece(capturedSquare, captured);
             } else {
                 // Normal capture: remove from destination
-                removePiece(move.to, move.capturedPiece);
+                removePiece(to, captured);
             }
         }
 
-        // 5. Place piece at destination (or promoted piece)
-        if (move.isPromotion) {
-            addPiece(move.to, move.promotionPiece);
+        // 4. Place piece at destination (or promoted piece)
+        if (PackedMove.isPromotion(move)) {
+            addPiece(to, PackedMove.promotionPiece(move));
         } else {
-            addPiece(move.to, piece);
+            addPiece(to, piece);
         }
 
-        // 6. Handle castling (move the rook)
-        if (move.isCastling) {
-            handleCastlingRookMove(move.from, move.to);
+        // 5. Handle castling (move the rook)
+        if (PackedMove.isCastling(move)) {
+            handleCastlingRookMove(from, to);
         }
 
-        // 7. Update castling rights (lose rights if king or rook moves)
-        if (piece == 'K') {
+        // 6. Update castling rights (lose rights if king or rook moves)
+        if (piece == Piece.WHITE_KING) {
             whiteCanCastleKingside = false;
             whiteCanCastleQueenside = false;
-        } else if (piece == 'k') {
+        } else if (piece == Piece.BLACK_KING) {
             blackCanCastleKingside = false;
             blackCanCastleQueenside = false;
         }
 
         // If rook moves from starting square, lose that side's castling
-        if (move.from == 0) whiteCanCastleQueenside = false;  // a1
-        if (move.from == 7) whiteCanCastleKingside = false;   // h1
-        if (move.from == 56) blackCanCastleQueenside = false; // a8
-        if (move.from == 63) blackCanCastleKingside = false;  // h8
-
-        // 8. Update en passant square
-        if (piece == 'P' && move.to - move.from == 16) {
+        if (from == 0) whiteCanCastleQueenside = false;  // a1
+        if (from == 7) whiteCanCastleKingside = false;   // h1
+        if (from == 56) blackCanCastleQueenside = false; // a8
+        if (from == 63) blackCanCastleKingside = false;  // h8
+
+        // Same if a rook gets captured on its starting square
+        if (to == 0) whiteCanCastleQueenside = false;
+        if (to == 7) whiteCanCastleKingside = false;
+        if (to == 56) blackCanCastleQueenside = false;
+        if (to == 63) blackCanCastleKingside = false;
+
+        // 7. Update en passant square
+        if (piece == Piece.WHITE_PAWN && to - from == 16) {
             // White pawn moved 2 squares
-            enPassantSquare = move.from + 8;
-        } else if (piece == 'p' && move.from - move.to == 16) {
+            enPassantSquare = from + 8;
+        } else if (piece == Piece.BLACK_PAWN && from - to == 16) {
             // Black pawn moved 2 squares
-            enPassantSquare = move.from - 8;
+            enPassantSquare = from - 8;
         } else {
             enPassantSquare = -1;
         }
 
-        // 9. Update half move clock (reset on capture or pawn move)
-        if (move.capturedPiece != '\0' || piece == 'P' || piece == 'p') {
+        // 8. Update half move clock (reset on capture or pawn move)
+        if (PackedMove.isCapture(move) || piece == Piece.WHITE_PAWN || piece == Piece.BLACK_PAWN) {
             halfMoveCount = 0;
         } else {
             halfMoveCount++;
         }
 
-        // 10. Switch turns
+        // 9. Switch turns
         isWhiteTurn = !isWhiteTurn;
 
-        return savedState;
+        hash ^= Zobrist.castlingKey(this);
+        hash ^= Zobrist.enPassantKey(enPassantSquare);
+        hash ^= Zobrist.SIDE_KEY;
     }
 
 
-    public void unmakeMove(Move move, GameState savedState) {
+    public void unmakeMove(int move, GameState savedState) {
         // 1. Switch turns back
         isWhiteTurn = !isWhiteTurn;
 
-        // 2. Get the piece that's currently at the destination
-        char piece = getPieceAt(move.to);
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int piece = PackedMove.piece(move);
 
-        // 3. If it was a promotion, the piece at 'to' is the promoted piece
-        //    We need to put back the original pawn
-        if (move.isPromotion) {
-            removePiece(move.to, piece);  // Remove promoted piece
-            char originalPawn = isWhiteTurn ? 'P' : 'p';
-            addPiece(move.from, originalPawn);  // Put pawn back at source
+        // 2. Move the piece back. After a promotion, the piece at 'to' is the promoted piece,
+        //    and the pawn goes back
+        if (PackedMove.isPromotion(move)) {
+            removePiece(to, PackedMove.promotionPiece(move));
         } else {
-            // Normal move: move piece back
-            removePiece(move.to, piece);
-            addPiece(move.from, piece);
+            removePiece(to, piece);
         }
+        addPiece(from, piece);
 
-        // 4. Restore captured piece
-        if (move.capturedPiece != '\0' && move.capturedPiece != '.') {
-            if (move.isEnPassant) {
+        // 3. Restore captured piece
+        if (PackedMove.isCapture(move)) {
+            int captured = PackedMove.captured(move);
+            if (PackedMove.isEnPassant(move)) {
                 // En passant: restore pawn to its actual square
-                int capturedSquare = isWhiteTurn ? (move.to - 8) : (move.to + 8);
-                addPiece(capturedSquare, move.capturedPiece);
+                int capturedSquare = isWhiteTurn ? (to - 8) : (to + 8);
+                addPiece(capturedSquare, captured);
             } else {
                 // Normal capture: restore to destination square
-                addPiece(move.to, move.capturedPiece);
+                addPiece(to, captured);
             }
         }
 
-        // 5. Undo castling (move rook back)
-        if (move.isCastling) {
-            undoCastlingRookMove(move.from, move.to);
+        // 4. Undo castling (move rook back)
+        if (PackedMove.isCastling(move)) {
+            undoCastlingRookMove(from, to);
         }
 
-        // 6. Restore saved state
+        // 5. Restore saved state
         whiteCanCastleKingside = savedState.whiteCanCastleKingside;
         whiteCanCastleQueenside = savedState.whiteCanCastleQueenside;
         blackCanCastleKingside = savedState.blackCanCastleKingside;
         blackCanCastleQueenside = savedState.blackCanCastleQueenside;
         enPassantSquare = savedState.enPassantSquare;
         halfMoveCount = savedState.halfMoveCount;
+        hash = savedState.hash;
+    }
+
+
+    // "Pass": let the opponent move twice in a row. Only used by the search (null move pruning).
+    public void makeNullMove(GameState savedState) {
+        savedState.save(this);
+
+        hash ^= Zobrist.enPassantKey(enPassantSquare);
+        enPassantSquare = -1;
+        halfMoveCount++;
+
+        isWhiteTurn = !isWhiteTurn;
+        hash ^= Zobrist.SIDE_KEY;
+    }
+
+
+    public void unmakeNullMove(GameState savedState) {
+        isWhiteTurn = !isWhiteTurn;
+        enPassantSquare = savedState.enPassantSquare;
+        halfMoveCount = savedState.halfMoveCount;
+        hash = savedState.hash;
     }
 
 
     private void undoCastlingRookMove(int kingFrom, int kingTo) {
         // White kingside: move rook back from f1 (5) to h1 (7)
         if (kingFrom == 4 && kingTo == 6) {
-            whiteRook &= ~(1L << 5);  // Remove from f1
-            whiteRook |= (1L << 7);   // Add back to h1
+            removePiece(5, Piece.WHITE_ROOK);  // Remove from f1
+            addPiece(7, Piece.WHITE_ROOK);     // Add back to h1
         }
         // White queenside: move rook back from d1 (3) to a1 (0)
         if (kingFrom == 4 && kingTo == 2) {
-            whiteRook &= ~(1L << 3);
-            whiteRook |= (1L);
+            removePiece(3, Piece.WHITE_ROOK);
+            addPiece(0, Piece.WHITE_ROOK);
         }
         // Black kingside: move rook back from f8 (61) to h8 (63)
         if (kingFrom == 60 && kingTo == 62) {
-            blackRook &= ~(1L << 61);
-            blackRook |= (1L << 63);
+            removePiece(61, Piece.BLACK_ROOK);
+            addPiece(63, Piece.BLACK_ROOK);
         }
         // Black queenside: move rook back from d8 (59) to a8 (56)
         if (kingFrom == 60 && kingTo == 58) {
-            blackRook &= ~(1L << 59);
-            blackRook |= (1L << 56);
+            removePiece(59, Piece.BLACK_ROOK);
+            addPiece(56, Piece.BLACK_ROOK);
         }
     }
 
 
-    private void removePiece(int square, char piece) {
+    // piece is a Piece code
+    private void removePiece(int square, int piece) {
         long mask = ~(1L << square);  // NOT of the bit at square
-
-        switch (piece) {
-            case 'P':
-                whitePawn &= mask;
-                break;
-            case 'p':
-                blackPawn &= mask;
-                break;
-            case 'N':
-                whiteKnight &= mask;
-                break;
-            case 'n':
-                blackKnight &= mask;
-                break;
-            case 'R':
-                whiteRook &= mask;
-                break;
-            case 'r':
-                blackRook &= mask;
-                break;
-            case 'B':
-                whiteBishop &= mask;
-                break;
-            case 'b':
-                blackBishop &= mask;
-                break;
-            case 'K':
-                whiteKing &= mask;
-                break;
-            case 'k':
-                blackKing &= mask;
-                break;
-            case 'Q':
-                whiteQueen &= mask;
-                break;
-            case 'q':
-                blackQueen &= mask;
-                break;
+        int color = Piece.color(piece);
+        board[square] = Piece.NONE;
+        pieces[color][Piece.type(piece)] &= mask;
+        occupancy[color] &= mask;
+        occupied &= mask;
+        material -= Evaluator.PIECE_MATERIAL[piece];
+        mgPieceSquare -= Evaluator.PIECE_SQUARE_MG[piece][square];
+        egPieceSquare -= Evaluator.PIECE_SQUARE_EG[piece][square];
+        phase -= Evaluator.PIECE_PHASE[piece];
+        hash ^= Zobrist.pieceKey(piece, square);
+        if (piece == Piece.WHITE_PAWN || piece == Piece.BLACK_PAWN) {
+            pawnHash ^= Zobrist.pieceKey(piece, square);
+        }
+        if (nnue != null) {
+            nnue.removePiece(this, square, piece);
         }
     }
 
-    private void addPiece(int square, char piece) {
+    private void addPiece(int square, int piece) {
         long mask = 1L << square;
-
-        switch (piece) {
-            case 'P':
-                whitePawn |= mask;
-                break;
-            case 'p':
-                blackPawn |= mask;
-                break;
-            case 'N':
-                whiteKnight |= mask;
-                break;
-            case 'n':
-                blackKnight |= mask;
-                break;
-            case 'R':
-                whiteRook |= mask;
-                break;
-            case 'r':
-                blackRook |= mask;
-                break;
-            case 'B':
-                whiteBishop |= mask;
-                break;
-            case 'b':
-                blackBishop |= mask;
-                break;
-            case 'K':
-                whiteKing |= mask;
-                break;
-            case 'k':
-                blackKing |= mask;
-                break;
-            case 'Q':
-                whiteQueen |= mask;
-                break;
-            case 'q':
-                blackQueen |= mask;
-                break;
+        int color = Piece.color(piece);
+        board[square] = piece;
+        pieces[color][Piece.type(piece)] |= mask;
+        occupancy[color] |= mask;
+        occupied |= mask;
+        material += Evaluator.PIECE_MATERIAL[piece];
+        mgPieceSquare += Evaluator.PIECE_SQUARE_MG[piece][square];
+        egPieceSquare += Evaluator.PIECE_SQUARE_EG[piece][square];
+        phase += Evaluator.PIECE_PHASE[piece];
+        hash ^= Zobrist.pieceKey(piece, square);
+        if (piece == Piece.WHITE_PAWN || piece == Piece.BLACK_PAWN) {
+            pawnHash ^= Zobrist.pieceKey(piece, square);
+        }
+        if (nnue != null) {
+            nnue.addPiece(this, square, piece);
         }
     }
 
     private void handleCastlingRookMove(int kingFrom, int kingTo) {
         // White kingside: move rook from h1 (7) to f1 (5)
         if (kingFrom == 4 && kingTo == 6) { //white king side castling
-            whiteRook &= ~(1L << 7);  // Remove from h1
-            whiteRook |= (1L << 5);   // Add to f1
+            removePiece(7, Piece.WHITE_ROOK);  // Remove from h1
+            addPiece(5, Piece.WHITE_ROOK);     // Add to f1
         }
         if (kingFrom == 4 && kingTo == 2) { //white queen side castling
-            whiteRook &= ~(1L);
-            whiteRook |= (1L << 3);
+            removePiece(0, Piece.WHITE_ROOK);
+            addPiece(3, Piece.WHITE_ROOK);
         }
         if (kingFrom == 60 && kingTo == 62) { //black king side castling
-            blackRook &= ~(1L << 63);
-            blackRook |= (1L << 61);
+            removePiece(63, Piece.BLACK_ROOK);
+            addPiece(61, Piece.BLACK_ROOK);
         }
         if (kingFrom == 60 && kingTo == 58) { //black queen side castling
-            blackRook &= ~(1L << 56);
-            blackRook |= (1L << 59);
+            removePiece(56, Piece.BLACK_ROOK);
+            addPiece(59, Piece.BLACK_ROOK);
         }
     }
 
 
     public boolean isKingInCheck(boolean isWhite) {
-        // 1. Find the king's position
-        long king = isWhite ? whiteKing : blackKing;
+        return isKingInCheck(isWhite ? Piece.WHITE : Piece.BLACK);
+    }
+
+    public boolean isKingInCheck(int color) {
+        long king = pieces[color][Piece.KING];
         if (king == 0) return false;  // No king (shouldn't happen)
 
-        int kingSquare = Long.numberOfTrailingZeros(king);
+        return isSquareAttacked(Long.numberOfTrailingZeros(king), color ^ 1, occupied);
+    }
 
-        // 2. Temporarily switch turns to generate opponent's moves
-        boolean originalTurn = isWhiteTurn;
-        isWhiteTurn = !isWhite;  // Switch to opponent's turn
 
-        // 3. Generate all opponent's moves
-        List<Move> opponentMoves = MoveGenerator.generateMoves(this);
+    // Is the square attacked by a piece of the given color? Works backwards from the square:
+    // a knight on the square would hit exactly the squares an enemy knight could attack it from,
+    // and the same goes for every other piece type. Cheapest tests first, stops at the first attacker.
+    public boolean isSquareAttacked(int square, int byColor) {
+        return isSquareAttacked(square, byColor, occupied);
+    }
 
-        // 4. Restore the turn
-        isWhiteTurn = originalTurn;
+    // Same, with the given occupancy for the sliders. The move generator takes the king off the
+    // board with it, so the king can't step back along the line of the slider checking it.
+    public boolean isSquareAttacked(int square, int byColor, long occupied) {
+        long[] attackers = pieces[byColor];
+        if ((Attacks.PAWN[byColor ^ 1][square] & attackers[Piece.PAWN]) != 0) return true;
+        if ((Attacks.KNIGHT[square] & attackers[Piece.KNIGHT]) != 0) return true;
+        if ((Attacks.KING[square] & attackers[Piece.KING]) != 0) return true;
 
-        // 5. Check if any opponent move attacks the king square
-        for (Move move : opponentMoves) {
-            if (move.to == kingSquare) {
-                return true;  // King is under attack!
-            }
-        }
+        long bishopsQueens = attackers[Piece.BISHOP] | attackers[Piece.QUEEN];
+        if ((Attacks.bishopAttacks(square, occupied) & bishopsQueens) != 0) return true;
 
-        return false;  // King is safe
+        long rooksQueens = attackers[Piece.ROOK] | attackers[Piece.QUEEN];
+        return (Attacks.rookAttacks(square, occupied) & rooksQueens) != 0;
     }
 
 
@@ -417,15 +431,15 @@ public class Position {
             int emptyCount = 0;
             for (int file = 0; file < 8; file++) {
                 int square = rank * 8 + file;
-                char piece = getPieceAt(square);
-                if (piece == '.') {
+                int piece = board[square];
+                if (piece == Piece.NONE) {
                     emptyCount++;
                 } else {
                     if (emptyCount > 0) {
                         fen.append(emptyCount);
                         emptyCount = 0;
                     }
-                    fen.append(piece);
+                    fen.append(Piece.toChar(piece));
                 }
             }
             if (emptyCount > 0) fen.append(emptyCount);
@@ -1,105 +1,633 @@
 package engine;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class Search {
 
-    // Find the best move for the current position
+    private static final int MAX_DEPTH = 64;
+
+    // deepest ply we can reach: main search plus quiescence
+    private static final int MAX_PLY = MAX_DEPTH + 16;
+
+    // how many nodes we search between two looks at the clock
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    private static final int DEFAULT_HASH_MB = 64;
+    private static final int DEFAULT_EVAL_CACHE_ENTRIES = 1 << 18;  // 4 MB
+
+    // Scores are from the side to move's point of view (negamax).
+    // Mate is MATE_SCORE - ply, so shorter mates score higher.
+    private static final int INFINITY = 1_000_000;
+    private static final int MATE_SCORE = 100_000;
+    private static final int MATE_BOUND = MATE_SCORE - MAX_PLY;
+
+    // Aspiration windows: start this wide around the last score, doubling on every fail
+    private static final int ASPIRATION_WINDOW = 150;
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int ASPIRATION_MAX_WINDOW = 1200;
+
+    // Forward pruning margins, indexed by remaining depth
+    private static final int[] FUTILITY_MARGIN = {0, 200, 450};
+    private static final int[] RAZOR_MARGIN = {0, 300, 500, 700};
+
+    // Quiescence: plies of captures after the main search, and the delta pruning safety margin
+    private static final int QUIESCENCE_DEPTH = 3;
+    private static final int DELTA_MARGIN = 200;
+
+    // Forward pruning switches, e.g. to measure what each technique is worth
+    public static boolean useNullMove = true;
+    public static boolean useLateMoveReductions = true;
+    public static boolean useFutilityPruning = true;
+    public static boolean useRazoring = true;
+
+    // Remembers positions searched before (also across moves of the same game)
+    private static TranspositionTable transpositionTable = new TranspositionTable(DEFAULT_HASH_MB);
+
+    // Static evaluations of positions evaluated before, mostly hit in quiescence
+    private static EvalCache evalCache = new EvalCache(DEFAULT_EVAL_CACHE_ENTRIES);
+
+    // Shared by all threads of the current search (time control)
+    private static volatile boolean stopped;
+    private static long deadline;
+    private static long startNanos;
+
+    // Lazy SMP: number of threads searching the same root
+    private static int threadCount = 1;
+
+    // Statistics of the last search
+    private static long[] depthNanos = new long[MAX_DEPTH + 1];  // when depth d was first finished
+    private static SearchStats lastStats = new SearchStats(MAX_DEPTH);
+
+    // Per thread state: every thread searches its own copy of the position
+    private final Position position;
+    private final MoveList rootMoves;
+    private final int[] scores;
+    private final int threadId;
+    private final MoveOrderer moveOrderer = new MoveOrderer(MAX_PLY);
+    private final SearchStats stats = new SearchStats(MAX_DEPTH);
+
+    // Search stack, one slot per ply, allocated once per thread so that
+    // searching a node allocates nothing
+    private final GameState[] undoStack = new GameState[MAX_PLY + 1];
+    private final MovePicker[] movePickers = new MovePicker[MAX_PLY + 1];
+    private final MoveList[] moveLists = new MoveList[MAX_PLY + 1];  // quiescence captures/evasions
+    private final int[] exchangeBuffer = new int[StaticExchange.MAX_EXCHANGE];
+    private int completedDepth;
+    private int bestMove;
+    private int rootBestMove;  // best move of the root search in progress
+
+
+    private Search(Position position, MoveList rootMoves, int threadId) {
+        this.position = position;
+        this.rootMoves = rootMoves;
+        this.scores = new int[rootMoves.size];
+        this.threadId = threadId;
+        this.bestMove = rootMoves.get(0);  // fallback if not even depth 1 completes
+        for (int ply = 0; ply <= MAX_PLY; ply++) {
+            undoStack[ply] = new GameState();
+            movePickers[ply] = new MovePicker(position, moveOrderer);
+            moveLists[ply] = new MoveList();
+        }
+    }
+
+
+    // Find the best move for the current position, null if there is none
     public static Move findBestMove(Position position, int depth) {
-        List<Move> legalMoves = MoveGenerator.generateLegalMoves(position);
+        // the per-depth and per-ply arrays only go up to MAX_DEPTH
+        return toMove(startSearch(position, Math.min(depth, MAX_DEPTH), Long.MAX_VALUE));
+    }
 
-        if (legalMoves.isEmpty()) {
-            return null;
+    // Find the best move within a time budget (milliseconds)
+    public static Move findBestMoveInTime(Position position, long timeBudgetMillis) {
+        return toMove(startSearch(position, MAX_DEPTH, timeBudgetMillis));
+    }
+
+    private static Move toMove(int move) {
+        return move == PackedMove.NONE ? null : PackedMove.toMove(move);
+    }
+
+    // Resize the transposition table, this also clears it
+    public static void setHashSizeMb(int sizeMb) {
+        transpositionTable = new TranspositionTable(sizeMb);
+    }
+
+    // Forget everything earlier searches left behind: the transposition table and the
+    // evaluation cache. Stand pat takes a cached exact score where it would otherwise use a
+    // lazy estimate, so the tree depends on the eval cache too.
+    public static void clearHash() {
+        transpositionTable.clear();
+        evalCache.clear();
+    }
+
+    // Resize the evaluation cache (rounded down to a power of two), this also clears it
+    public static void setEvalCacheEntries(int entries) {
+        evalCache = new EvalCache(entries);
+    }
+
+    public static void clearEvalCache() {
+        evalCache.clear();
+    }
+
+    // Evaluate with an NNUE network from now on, null to go back to the hand-written
+    // evaluation. Not while a search is running; clears the evaluation cache.
+    public static void useNetwork(NnueNetwork network) {
+        Evaluator.setNetwork(network);
+        evalCache.clear();
+    }
+
+    // 1 = plain single threaded search
+    public static void setThreads(int threads) {
+        threadCount = Math.max(1, threads);
+    }
+
+    public static int getThreads() {
+        return threadCount;
+    }
+
+    // Total nodes of the last search, summed over all threads
+    public static long getNodeCount() {
+        return lastStats.nodes;
+    }
+
+    // Node and pruning counters of the last search, summed over all threads
+    // (the branching factor is the main thread's)
+    public static SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    // Milliseconds from the start of the last search until depth d was first completed
+    // by any thread, or -1 if no thread got there
+    public static double getTimeToDepthMillis(int depth) {
+        if (depth < 1 || depth > MAX_DEPTH || depthNanos[depth] == 0) {
+            return -1;
         }
+        return depthNanos[depth] / 1_000_000.0;
+    }
 
-        Move bestMove = null;
-        boolean isWhiteTurn = position.isWhiteTurn;  // ← Save turn BEFORE loop
-        int bestScore = isWhiteTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+    // How much of the remaining clock time we spend on one move.
+    // Assume ~30 more moves to play and keep a safety margin so we never flag.
+    public static long allocateTime(long remainingMillis) {
+        long budget = remainingMillis / 30;
+        long safetyMargin = 200;
+        budget = Math.min(budget, remainingMillis - safetyMargin);
+        return Math.max(budget, 50);
+    }
 
-        for (Move move : legalMoves) {
-            GameState saved = position.makeMove(move);
-            int score = minimax(position, depth - 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
-            position.unmakeMove(move, saved);
 
-            // Update best move
-            if (isWhiteTurn) {  // ← Use saved turn
-                if (score > bestScore) {
-                    bestScore = score;
-                    bestMove = move;
-                }
+    // Lazy SMP: the calling thread is the main thread, the helpers search the same
+    // root on their own position copies. They don't talk to each other except
+    // through the shared transposition table, which is enough to split the work.
+    private static int startSearch(Position position, int maxDepth, long timeBudgetMillis) {
+        MoveList rootMoves = new MoveList();
+        MoveGenerator.generateLegalMoves(position, rootMoves);
+
+        if (rootMoves.isEmpty()) {
+            return PackedMove.NONE;
+        }
+
+        startNanos = System.nanoTime();
+        long startTime = System.currentTimeMillis();
+        deadline = timeBudgetMillis == Long.MAX_VALUE ? Long.MAX_VALUE : startTime + timeBudgetMillis;
+        stopped = false;
+        depthNanos = new long[MAX_DEPTH + 1];
+        transpositionTable.newSearch();
+
+        Search[] searchers = new Search[threadCount];
+        searchers[0] = new Search(position, rootMoves, 0);
+        Thread[] helpers = new Thread[threadCount - 1];
+        for (int i = 1; i < threadCount; i++) {
+            MoveList helperMoves = new MoveList();
+            System.arraycopy(rootMoves.moves, 0, helperMoves.moves, 0, rootMoves.size);
+            helperMoves.size = rootMoves.size;
+            Search helper = new Search(new Position(position), helperMoves, i);
+            searchers[i] = helper;
+            helpers[i - 1] = new Thread(() -> helper.iterativeDeepening(maxDepth, Long.MAX_VALUE),
+                    "search-helper-" + i);
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
+        }
+
+        searchers[0].iterativeDeepening(maxDepth, timeBudgetMillis);
+
+        // Main thread is done, so is everybody else
+        stopped = true;
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Take the move of the thread that finished the deepest iteration (main thread on ties)
+        Search best = searchers[0];
+        SearchStats total = searchers[0].stats;
+        for (int i = 1; i < searchers.length; i++) {
+            total.add(searchers[i].stats);
+            if (searchers[i].completedDepth > best.completedDepth) {
+                best = searchers[i];
+            }
+        }
+        lastStats = total;
+        return best.bestMove;
+    }
+
+
+    // Search depth 1, 2, 3 ... until the depth limit or the time runs out.
+    // Each finished iteration reorders the root moves (best first) so the next
+    // iteration searches the most promising moves first.
+    // Helper threads start one ply deeper every other thread, so they are not
+    // all searching the same tree at the same time.
+    private void iterativeDeepening(int maxDepth, long timeBudgetMillis) {
+        long startTime = System.currentTimeMillis();
+        int firstDepth = 1 + threadId % 2;
+        int previousScore = 0;
+        long pawnHashProbes = Evaluator.getPawnHashProbes();
+        long pawnHashHits = Evaluator.getPawnHashHits();
+
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            int score = aspirationSearch(depth, previousScore);
+
+            // Partial iterations are thrown away, keep the last completed result
+            if (stopped) {
+                break;
+            }
+            previousScore = score;
+            bestMove = rootBestMove;
+            completedDepth = depth;
+            stats.nodesAtDepth[depth] = stats.nodes;
+            stats.completedDepth = depth;
+            recordDepthTime(depth);
+            orderRootMoves(rootMoves, scores);
+
+            // Don't start another iteration we most likely can't finish:
+            // the next depth usually costs more than everything so far
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (timeBudgetMillis != Long.MAX_VALUE && elapsed * 2 > timeBudgetMillis) {
+                break;
+            }
+        }
+
+        // The evaluator counts per thread
+        stats.pawnHashProbes = Evaluator.getPawnHashProbes() - pawnHashProbes;
+        stats.pawnHashHits = Evaluator.getPawnHashHits() - pawnHashHits;
+    }
+
+
+    private static synchronized void recordDepthTime(int depth) {
+        if (depthNanos[depth] == 0) {
+            depthNanos[depth] = Math.max(1, System.nanoTime() - startNanos);
+        }
+    }
+
+
+    // Aspiration windows: the score rarely changes much from one iteration to the next,
+    // so search the root with a narrow window around the previous score. A narrow window
+    // prunes more. If the real score falls outside, widen that side and search again.
+    private int aspirationSearch(int depth, int previousScore) {
+        int window = ASPIRATION_WINDOW;
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        if (depth >= ASPIRATION_MIN_DEPTH) {
+            alpha = previousScore - window;
+            beta = previousScore + window;
+        }
+
+        while (true) {
+            int score = searchRoot(depth, alpha, beta);
+            if (stopped) {
+                return score;
+            }
+
+            if (score <= alpha) {
+                alpha = Math.max(score - window, -INFINITY);  // fail low
+            } else if (score >= beta) {
+                beta = Math.min(score + window, INFINITY);    // fail high
             } else {
-                if (score < bestScore) {
-                    bestScore = score;
-                    bestMove = move;
+                return score;
+            }
+
+            window *= 2;
+            if (window > ASPIRATION_MAX_WINDOW) {
+                alpha = -INFINITY;
+                beta = INFINITY;
+            }
+        }
+    }
+
+
+    private int searchRoot(int depth, int alpha, int beta) {
+        int bestScore = -INFINITY;
+        rootBestMove = PackedMove.NONE;
+        GameState saved = undoStack[0];
+
+        for (int i = 0; i < rootMoves.size; i++) {
+            int move = rootMoves.get(i);
+
+            position.makeMove(move, saved);
+            int score;
+            if (i == 0) {
+                score = -pvSearch(depth - 1, 1, -beta, -alpha, true);
+            } else {
+                // Only prove this move is not better than the best so far, re-search if it is
+                score = -pvSearch(depth - 1, 1, -alpha - 1, -alpha, true);
+                if (score > alpha && score < beta) {
+                    score = -pvSearch(depth - 1, 1, -beta, -alpha, true);
+                }
+            }
+            position.unmakeMove(move, saved);
+
+            if (stopped) {
+                return bestScore;
+            }
+            scores[i] = score;
+
+            if (score > bestScore) {
+                bestScore = score;
+                rootBestMove = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                // Fail high: the aspiration window is re-opened, the other moves are unknown
+                for (int j = i + 1; j < rootMoves.size; j++) {
+                    scores[j] = -INFINITY;
                 }
+                break;
             }
         }
 
-        return bestMove;
+        return bestScore;
     }
 
-    // Minimax with alpha-beta pruning
-    private static int minimax(Position position, int depth, int alpha, int beta) {
+
+    // Sort root moves by the scores of the last iteration, best first.
+    // Insertion sort: stable, so equally scored moves keep their previous order.
+    private static void orderRootMoves(MoveList rootMoves, int[] scores) {
+        for (int i = 1; i < rootMoves.size; i++) {
+            int move = rootMoves.get(i);
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                rootMoves.set(j + 1, rootMoves.get(j));
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            rootMoves.set(j + 1, move);
+            scores[j + 1] = score;
+        }
+    }
+
+
+    private void checkTime() {
+        if (++stats.nodes % TIME_CHECK_INTERVAL == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+    }
+
+
+    // Principal variation search, negamax form: every score is from the point of view of
+    // the side to move, so one branch serves both colors. The first move is searched with
+    // the full window; the others only with a zero window, which is cheap, to prove they
+    // are not better. If one is better after all, it is searched again with the full window.
+    private int pvSearch(int depth, int ply, int alpha, int beta, boolean allowNullMove) {
+        checkTime();
+        if (stopped) {
+            return 0;  // result is discarded by the root
+        }
+
         // Base case: reached depth limit or game over
-        if (depth == 0) {
-            return quiesce(position, alpha, beta, 3);
+        if (depth <= 0) {
+            return quiesce(alpha, beta, ply, QUIESCENCE_DEPTH);
         }
 
-        List<Move> legalMoves = MoveGenerator.generateLegalMoves(position);
+        boolean isPvNode = beta - alpha > 1;
 
-        if (legalMoves.isEmpty()) {
-            if (position.isKingInCheck(position.isWhiteTurn)) {
-                // Checkmate
-                return position.isWhiteTurn
-                        ? Integer.MIN_VALUE + depth
-                        : Integer.MAX_VALUE - depth;
-            } else {
-                // Stalemate
+        // Transposition table: reuse the result if this position was already
+        // searched at least as deep, otherwise at least try its best move first
+        long entry = transpositionTable.probe(position.hash);
+        int hashMove = 0;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int ttScore = scoreFromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && ttScore >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && ttScore <= alpha)) {
+                    return ttScore;
+                }
+            }
+        }
+
+        boolean inCheck = position.isKingInCheck(position.isWhiteTurn);
+
+        // Forward pruning only where a wrong guess can't hurt the principal variation,
+        // and never in check (we might be getting mated)
+        boolean canPrune = !isPvNode && !inCheck && Math.abs(beta) < MATE_BOUND;
+        int staticEval = canPrune ? sideToMoveEval() : 0;
+
+        // Razoring: far below alpha close to the leaves, so only a capture can save us.
+        // Ask quiescence; if even that doesn't get near alpha, give up on this node.
+        if (useRazoring && canPrune && depth <= 3 && staticEval + RAZOR_MARGIN[depth] <= alpha) {
+            stats.razoringTries++;
+            int razorAlpha = alpha - RAZOR_MARGIN[depth];
+            int score = quiesce(razorAlpha, razorAlpha + 1, ply, QUIESCENCE_DEPTH);
+            if (score <= razorAlpha) {
+                stats.razoringCutoffs++;
+                return score;
+            }
+        }
+
+        // Null move pruning: if we are so far ahead that even passing keeps us above beta,
+        // a real move will too. Guards against zugzwang: not twice in a row, and not
+        // with only king and pawns left (that's where passing is often the best move).
+        if (useNullMove && canPrune && allowNullMove && depth >= 3 && staticEval >= beta
+                && hasNonPawnMaterial(position.sideToMove())) {
+            stats.nullMoveTries++;
+            int reduction = depth >= 6 ? 3 : 2;
+            GameState saved = undoStack[ply];
+            position.makeNullMove(saved);
+            int score = -pvSearch(depth - 1 - reduction, ply + 1, -beta, -beta + 1, false);
+            position.unmakeNullMove(saved);
+
+            if (stopped) {
                 return 0;
             }
+            if (score >= beta) {
+                stats.nullMoveCutoffs++;
+                return score >= MATE_BOUND ? beta : score;  // don't trust mates found by passing
+            }
         }
 
-        if (position.isWhiteTurn) {
-            // Maximizing player (white)
-            int maxScore = Integer.MIN_VALUE;
-            for (Move move : legalMoves) {
-                GameState saved = position.makeMove(move);
-                int score = minimax(position, depth - 1, alpha, beta);
-                position.unmakeMove(move, saved);
+        // Futility pruning: near the leaves, quiet moves can't raise a hopeless static eval to alpha
+        boolean futile = useFutilityPruning && canPrune && depth <= 2
+                && staticEval + FUTILITY_MARGIN[depth] <= alpha;
 
-                maxScore = Math.max(maxScore, score);
-                alpha = Math.max(alpha, score);
+        int originalAlpha = alpha;
+        int bestMove = PackedMove.NONE;
+        int bestScore = -INFINITY;
+        int moveNumber = 0;
 
-                if (alpha >= beta) {
-                    break;  // Beta cutoff (pruning!)
-                }
+        boolean isWhite = position.isWhiteTurn;
+        MovePicker movePicker = movePickers[ply];
+        movePicker.init(hashMove, ply);
+        GameState saved = undoStack[ply];
+        int move;
+
+        while ((move = movePicker.next()) != PackedMove.NONE) {
+            position.makeMove(move, saved);
+
+            // Legality is checked lazily, only for the moves we actually get to
+            if (position.isKingInCheck(isWhite)) {
+                position.unmakeMove(move, saved);
+                continue;
             }
-            return maxScore;
-        } else {
-            // Minimizing player (black)
-            int minScore = Integer.MAX_VALUE;
-            for (Move move : legalMoves) {
-                GameState saved = position.makeMove(move);
-                int score = minimax(position, depth - 1, alpha, beta);
+
+            moveNumber++;
+            boolean isQuiet = PackedMove.isQuiet(move);
+            boolean givesCheck = isQuiet && (futile || moveNumber > 3)
+                    && position.isKingInCheck(position.isWhiteTurn);
+
+            if (futile && isQuiet && bestMove != PackedMove.NONE && !givesCheck) {
                 position.unmakeMove(move, saved);
+                stats.futilityPruned++;
+                continue;
+            }
 
-                minScore = Math.min(minScore, score);
-                beta = Math.min(beta, score);
+            int score;
+            if (bestMove == PackedMove.NONE) {
+                score = -pvSearch(depth - 1, ply + 1, -beta, -alpha, true);
+            } else {
+                // Late move reductions: quiet moves this far down the ordered list rarely
+                // turn out best, so search them shallower first
+                int reduction = 0;
+                if (useLateMoveReductions && depth >= 3 && moveNumber > 3 && isQuiet && !inCheck && !givesCheck) {
+                    reduction = moveNumber > 6 && depth >= 6 ? 2 : 1;
+                    stats.lateMoveReductions++;
+                }
 
-                if (alpha >= beta) {
-                    break;  // Beta cutoff (pruning!)
+                score = -pvSearch(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, true);
+                if (reduction > 0 && score > alpha) {
+                    stats.lateMoveResearches++;
+                    score = -pvSearch(depth - 1, ply + 1, -alpha - 1, -alpha, true);
                 }
+                if (score > alpha && score < beta) {
+                    score = -pvSearch(depth - 1, ply + 1, -beta, -alpha, true);
+                }
+            }
+            position.unmakeMove(move, saved);
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                moveOrderer.recordCutoff(move, depth, ply);
+                break;  // Beta cutoff (pruning!)
             }
-            return minScore;
         }
+
+        if (moveNumber == 0) {
+            return inCheck ? -MATE_SCORE + ply : 0;  // Checkmate or stalemate
+        }
+
+        // A search that was cut short by the clock is not worth remembering
+        if (!stopped) {
+            int bound;
+            if (bestScore <= originalAlpha) {
+                bound = TranspositionTable.UPPER_BOUND;
+            } else if (bestScore >= beta) {
+                bound = TranspositionTable.LOWER_BOUND;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            transpositionTable.store(position.hash, depth, bound, scoreToTable(bestScore, ply), bestMove);
+        }
+
+        return bestScore;
     }
 
 
+    private int sideToMoveEval() {
+        int eval;
+        long cached = probeEvalCache();
+        if (cached != 0) {
+            eval = EvalCache.score(cached);
+        } else {
+            eval = Evaluator.evaluate(position);
+            evalCache.store(position.hash, EvalCache.pack(eval));
+        }
+        return position.isWhiteTurn ? eval : -eval;
+    }
+
 
-    private static int quiesce(Position position, int alpha, int beta, int depth){
-        //get static evaluation of current position
-        int standPat = Evaluator.evaluate(position);
+    // Side to move's evaluation for quiescence stand pat. Far outside (alpha, beta) the
+    // evaluator may stop after the cheap terms; such an estimate isn't cached.
+    private int standPatEval(int alpha, int beta) {
+        long cached = probeEvalCache();
+        if (cached != 0) {
+            int eval = EvalCache.score(cached);
+            return position.isWhiteTurn ? eval : -eval;
+        }
+
+        // The evaluator's window is from white's point of view
+        int whiteAlpha = position.isWhiteTurn ? alpha : -beta;
+        int whiteBeta = position.isWhiteTurn ? beta : -alpha;
+        int eval = Evaluator.evaluate(position, whiteAlpha, whiteBeta);
+        if (!Evaluator.mayBeLazy(eval, whiteAlpha, whiteBeta)) {
+            evalCache.store(position.hash, EvalCache.pack(eval));
+        }
+        return position.isWhiteTurn ? eval : -eval;
+    }
+
+    // Counted in this thread's stats, the table itself is shared
+    private long probeEvalCache() {
+        stats.evalCacheProbes++;
+        long cached = evalCache.probe(position.hash);
+        if (cached != 0) {
+            stats.evalCacheHits++;
+        }
+        return cached;
+    }
+
+
+    private boolean hasNonPawnMaterial(int color) {
+        long[] own = position.pieces[color];
+        return (position.occupancy[color] ^ own[Piece.PAWN] ^ own[Piece.KING]) != 0;
+    }
+
+
+    // Mate scores count plies from the root, but the table is shared between different
+    // roots and plies, so it stores them as distance from the stored node instead.
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+
+    // Quiescence search: only captures and promotions, until the position is quiet,
+    // so the evaluation is never taken in the middle of an exchange.
+    // In check there is no standing pat: all evasions are searched, and no evasion means mate.
+    private int quiesce(int alpha, int beta, int ply, int depth){
+        checkTime();
+
+        boolean inCheck = depth > 0 && position.isKingInCheck(position.isWhiteTurn);
+        if (inCheck) {
+            return quiesceEvasions(alpha, beta, ply, depth);
+        }
+
+        //get static evaluation of current position, only as exact as the window needs
+        int standPat = standPatEval(alpha, beta);
 
         if (depth <= 0){
             return standPat;
@@ -107,68 +635,96 @@ public class Search {
 
         // If this position is already too good (for the side to move),
         // we can prune—no need to search further
-        if (position.isWhiteTurn) {
-            if (standPat >= beta) {
-                return beta;
-            }
-            if (standPat > alpha) {
-                alpha = standPat;
-            }
-        } else {
-            if (standPat <= alpha) {
-                return alpha;
-            }
-            if (standPat < beta) {
-                beta = standPat;
-            }
+        if (standPat >= beta) {
+            return standPat;
         }
-
-        List<Move> allMoves = MoveGenerator.generateMoves(position);
-        List<Move> forcingMoves = new ArrayList<>();
-        for (Move move : allMoves) {
-            if (move.isCapture()) {
-                forcingMoves.add(move);
-            }
+        if (standPat > alpha) {
+            alpha = standPat;
         }
 
+        MoveList forcingMoves = moveLists[ply];
+        forcingMoves.clear();
+        MoveGenerator.generateCaptures(position, forcingMoves);
+
         // If no forcing moves, return the standing pat score
         if (forcingMoves.isEmpty()) {
             return standPat;
         }
+        moveOrderer.orderCaptures(forcingMoves);
 
-        if (position.isWhiteTurn) {
-            int maxScore = standPat;  // Start with standing pat
+        boolean isWhite = position.isWhiteTurn;
+        int bestScore = standPat;  // Start with standing pat
+        GameState saved = undoStack[ply];
 
-            for (Move move : forcingMoves) {
-                GameState saved = position.makeMove(move);
-                int score = quiesce(position, alpha, beta, depth -1);  // Recursive call
-                position.unmakeMove(move, saved);
+        for (int i = 0; i < forcingMoves.size; i++) {
+            int move = forcingMoves.get(i);
 
-                maxScore = Math.max(maxScore, score);
-                alpha = Math.max(alpha, score);
+            // Under-promotions are never the only way to win material
+            if (PackedMove.isPromotion(move) && PackedMove.promotionType(move) != Piece.QUEEN) {
+                continue;
+            }
 
-                if (alpha >= beta) {
-                    break;  // Beta cutoff
-                }
+            // Delta pruning: even winning the piece for free doesn't get us to alpha
+            if (!PackedMove.isPromotion(move)
+                    && standPat + StaticExchange.value(PackedMove.captured(move)) + DELTA_MARGIN <= alpha) {
+                continue;
             }
-            return maxScore;
-        } else {
-            int minScore = standPat;  // Start with standing pat
 
-            for (Move move : forcingMoves) {
-                GameState saved = position.makeMove(move);
-                int score = quiesce(position, alpha, beta, depth -1);  // Recursive call
-                position.unmakeMove(move, saved);
+            // Captures that lose material once the recaptures are done
+            if (StaticExchange.evaluate(position, move, exchangeBuffer) < 0) {
+                continue;
+            }
 
-                minScore = Math.min(minScore, score);
-                beta = Math.min(beta, score);
+            position.makeMove(move, saved);
+            // Generated moves are pseudo-legal, skip the ones that leave our king in check
+            if (position.isKingInCheck(isWhite)) {
+                position.unmakeMove(move, saved);
+                continue;
+            }
+            int score = -quiesce(-beta, -alpha, ply + 1, depth - 1);  // Recursive call
+            position.unmakeMove(move, saved);
 
-                if (alpha >= beta) {
-                    break;  // Beta cutoff
-                }
+            if (score > bestScore) {
+                bestScore = score;
             }
-            return minScore;
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;  // Beta cutoff
+            }
+        }
+        return bestScore;
+    }
+
+
+    private int quiesceEvasions(int alpha, int beta, int ply, int depth) {
+        MoveList evasions = moveLists[ply];
+        evasions.clear();
+        MoveGenerator.generateLegalMoves(position, evasions);
+        if (evasions.isEmpty()) {
+            return -MATE_SCORE + ply;  // Checkmate
         }
+        moveOrderer.orderCaptures(evasions);
 
+        int bestScore = -INFINITY;
+        GameState saved = undoStack[ply];
+        for (int i = 0; i < evasions.size; i++) {
+            int move = evasions.get(i);
+            position.makeMove(move, saved);
+            int score = -quiesce(-beta, -alpha, ply + 1, depth - 1);
+            position.unmakeMove(move, saved);
+
+            if (score > bestScore) {
+                bestScore = score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return bestScore;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package engine;
+
+// Counters for one search, to see what the forward pruning techniques are doing.
+// Every search thread counts into its own, Search adds them up at the end.
+public class SearchStats {
+
+    public long nodes;
+
+    public long nullMoveTries;
+    public long nullMoveCutoffs;
+
+    public long lateMoveReductions;
+    public long lateMoveResearches;   // reduced move was better than expected, searched again
+
+    public long futilityPruned;       // quiet moves skipped near the leaves
+
+    public long razoringTries;
+    public long razoringCutoffs;
+
+    public long pawnHashProbes;       // see Evaluator
+    public long pawnHashHits;
+    public long evalCacheProbes;      // see Search.sideToMoveEval
+    public long evalCacheHits;
+
+    // Main thread: total nodes when each iteration finished
+    final long[] nodesAtDepth;
+    int completedDepth;
+
+
+    public SearchStats(int maxDepth) {
+        nodesAtDepth = new long[maxDepth + 1];
+    }
+
+
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        nullMoveTries += other.nullMoveTries;
+        nullMoveCutoffs += other.nullMoveCutoffs;
+        lateMoveReductions += other.lateMoveReductions;
+        lateMoveResearches += other.lateMoveResearches;
+        futilityPruned += other.futilityPruned;
+        razoringTries += other.razoringTries;
+        razoringCutoffs += other.razoringCutoffs;
+        pawnHashProbes += other.pawnHashProbes;
+        pawnHashHits += other.pawnHashHits;
+        evalCacheProbes += other.evalCacheProbes;
+        evalCacheHits += other.evalCacheHits;
+    }
+
+
+    // How many times more nodes each extra ply costs, averaged over the iterations
+    // from depth 2 on (depth 1 is too small to say anything)
+    public double effectiveBranchingFactor() {
+        if (completedDepth < 3) {
+            return 0;
+        }
+        long first = nodesAtDepth[2] - nodesAtDepth[1];
+        long last = nodesAtDepth[completedDepth] - nodesAtDepth[completedDepth - 1];
+        if (first <= 0 || last <= 0) {
+            return 0;
+        }
+        return Math.pow((double) last / first, 1.0 / (completedDepth - 2));
+    }
+
+
+    // Share of pawn hash probes that hit, 0..1
+    public double pawnHashHitRate() {
+        return pawnHashProbes == 0 ? 0 : (double) pawnHashHits / pawnHashProbes;
+    }
+
+    public double evalCacheHitRate() {
+        return evalCacheProbes == 0 ? 0 : (double) evalCacheHits / evalCacheProbes;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("nodes %d, EBF %.2f%n", nodes, effectiveBranchingFactor())
+                + String.format("  null move:  %d tries, %d cutoffs%n", nullMoveTries, nullMoveCutoffs)
+                + String.format("  LMR:        %d reductions, %d re-searches%n", lateMoveReductions, lateMoveResearches)
+                + String.format("  futility:   %d moves pruned%n", futilityPruned)
+                + String.format("  razoring:   %d tries, %d cutoffs%n", razoringTries, razoringCutoffs)
+                + String.format("  pawn hash:  %.1f%% hits%n", pawnHashHitRate() * 100)
+                + String.format("  eval cache: %.1f%% hits", evalCacheHitRate() * 100);
+    }
+}
@@ -0,0 +1,80 @@
+package engine;
+
+// Static exchange evaluation: what a capture wins or loses in material once both
+// sides have recaptured on the target square with their cheapest pieces, without
+// searching. Quiescence uses it to skip captures that just give material away.
+public class StaticExchange {
+
+    private static final int[] VALUES = {100, 320, 330, 500, 900, 20000};  // P N B R Q K
+
+    // Longest capture sequence we follow (there are at most 32 pieces)
+    public static final int MAX_EXCHANGE = 32;
+
+    // gain is the caller's scratch array for the swap list (MAX_EXCHANGE long),
+    // so the search doesn't allocate one for every capture
+    public static int evaluate(Position position, int move, int[] gain) {
+        int to = PackedMove.to(move);
+        int side = Piece.color(PackedMove.piece(move));
+
+        int depth = 0;
+        gain[0] = PackedMove.isCapture(move) ? VALUES[Piece.type(PackedMove.captured(move))] : 0;
+
+        int attackerValue = VALUES[Piece.type(PackedMove.piece(move))];
+        if (PackedMove.isPromotion(move)) {
+            attackerValue = VALUES[PackedMove.promotionType(move)];
+            gain[0] += attackerValue - VALUES[Piece.PAWN];
+        }
+
+        long occupied = position.occupied;
+        if (PackedMove.isEnPassant(move)) {
+            occupied ^= 1L << (side == Piece.WHITE ? to - 8 : to + 8);
+        }
+        long fromSet = 1L << PackedMove.from(move);
+        long attackers = Attacks.attackersTo(position, to, occupied);
+        long[] white = position.pieces[Piece.WHITE];
+        long[] black = position.pieces[Piece.BLACK];
+        long bishopsQueens = white[Piece.BISHOP] | black[Piece.BISHOP] | white[Piece.QUEEN] | black[Piece.QUEEN];
+        long rooksQueens = white[Piece.ROOK] | black[Piece.ROOK] | white[Piece.QUEEN] | black[Piece.QUEEN];
+
+        do {
+            depth++;
+            // Score if the piece that just captured gets taken
+            gain[depth] = attackerValue - gain[depth - 1];
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0) {
+                break;  // neither side would go on with this exchange
+            }
+
+            // Remove the capturer; sliders behind it may now see the square (x-rays)
+            occupied ^= fromSet;
+            attackers ^= fromSet;
+            attackers |= (Attacks.bishopAttacks(to, occupied) & bishopsQueens)
+                    | (Attacks.rookAttacks(to, occupied) & rooksQueens);
+            attackers &= occupied;
+
+            side ^= 1;
+            fromSet = 0;
+            long sideAttackers = attackers & position.occupancy[side];
+            long[] sidePieces = position.pieces[side];
+            for (int type = Piece.PAWN; type <= Piece.KING && sideAttackers != 0; type++) {
+                long candidates = sideAttackers & sidePieces[type];
+                if (candidates != 0) {
+                    fromSet = candidates & -candidates;  // least valuable attacker
+                    attackerValue = VALUES[type];
+                    break;
+                }
+            }
+        } while (fromSet != 0 && depth < gain.length - 1);
+
+        // Walk back: each side may stop capturing when that's better for it
+        while (--depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+        return gain[0];
+    }
+
+
+    // Value of a piece (Piece code)
+    public static int value(int piece) {
+        return piece == Piece.NONE ? 0 : VALUES[Piece.type(piece)];
+    }
+}
@@ -0,0 +1,124 @@
+package engine;
+
+// Shared by all search threads without any locking. Every slot stores
+// key ^ data next to data, so an entry that was half overwritten by another
+// thread simply doesn't match its key anymore and is ignored (Hyatt's lockless hashing).
+public class TranspositionTable {
+
+    // Bound types: what the stored score means
+    public static final int EXACT = 0;        // score is exact
+    public static final int LOWER_BOUND = 1;  // real score >= stored score (search failed high)
+    public static final int UPPER_BOUND = 2;  // real score <= stored score (search failed low)
+
+    // Two entries per bucket, each entry = one key + one packed data long (16 bytes)
+    private static final int BUCKET_SIZE = 2;
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+
+    // Bumped every new search, so entries from old searches get replaced first
+    private int age;
+
+    // Data layout (64 bits):
+    //   bits  0-31  score
+    //   bits 32-39  depth
+    //   bits 40-41  bound type
+    //   bits 42-47  age
+    //   bits 48-63  best move key (PackedMove.key: from, to, promotion), 0 = none
+    public TranspositionTable(int sizeMb) {
+        long entries = (long) sizeMb * 1024 * 1024 / ENTRY_BYTES;
+        // round down to a power of two so the index is a simple mask
+        long buckets = Long.highestOneBit(Math.max(entries / BUCKET_SIZE, 1));
+        // at most 2^29 buckets, so buckets * BUCKET_SIZE still fits an array length
+        buckets = Math.min(buckets, 1L << 29);
+        bucketMask = (int) (buckets - 1);
+        keys = new long[(int) (buckets * BUCKET_SIZE)];
+        data = new long[(int) (buckets * BUCKET_SIZE)];
+    }
+
+
+    public void newSearch() {
+        age = (age + 1) & 63;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(data, 0L);
+        age = 0;
+    }
+
+
+    // Returns the packed entry for this key, or 0 if there is none
+    public long probe(long key) {
+        int index = (int) (key & bucketMask) * BUCKET_SIZE;
+        for (int i = index; i < index + BUCKET_SIZE; i++) {
+            long entry = data[i];
+            if ((keys[i] ^ entry) == key && entry != 0) {
+                return entry;
+            }
+        }
+        return 0L;
+    }
+
+
+    public void store(long key, int depth, int bound, int score, int bestMove) {
+        int index = (int) (key & bucketMask) * BUCKET_SIZE;
+
+        // Replacement: same position first, otherwise the least valuable slot.
+        // A slot is worth its depth, minus a big penalty for every search it is old.
+        int replace = index;
+        int lowestWorth = Integer.MAX_VALUE;
+        for (int i = index; i < index + BUCKET_SIZE; i++) {
+            long entry = data[i];
+            if ((keys[i] ^ entry) == key || entry == 0) {
+                replace = i;
+                break;
+            }
+            int entryAge = (age - entryAge(entry)) & 63;
+            int worth = depth(entry) - entryAge * 8;
+            if (worth < lowestWorth) {
+                lowestWorth = worth;
+                replace = i;
+            }
+        }
+
+        // Keep the old best move if this search didn't find one (e.g. fail low)
+        int move = PackedMove.key(bestMove);
+        long oldEntry = data[replace];
+        if (move == 0 && (keys[replace] ^ oldEntry) == key) {
+            move = move(oldEntry);
+        }
+
+        long entry = (score & 0xFFFFFFFFL)
+                | ((long) Math.min(depth, 255) << 32)
+                | ((long) bound << 40)
+                | ((long) age << 42)
+                | ((long) move << 48);
+        keys[replace] = key ^ entry;
+        data[replace] = entry;
+    }
+
+
+    // Accessors for packed entries
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    private static int entryAge(long entry) {
+        return (int) (entry >>> 42) & 0x3F;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 48) & 0xFFFF;
+    }
+}
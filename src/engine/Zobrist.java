@@ -0,0 +1,68 @@
+package engine;
+
+import java.util.Random;
+
+public class Zobrist {
+
+    // One random number per (piece, square), in Piece code order, plus side to move, castling rights and en passant file
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    public static final long SIDE_KEY;
+
+    // Fixed seed, so hashes are the same in every run (easier to debug)
+    static {
+        Random random = new Random(0x5EED_C0FFEEL);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                PIECE_KEYS[piece][square] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            CASTLING_KEYS[i] = random.nextLong();
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT_KEYS[file] = random.nextLong();
+        }
+        SIDE_KEY = random.nextLong();
+    }
+
+
+    // piece is a Piece code
+    public static long pieceKey(int piece, int square) {
+        return PIECE_KEYS[piece - 1][square];
+    }
+
+    // Castling rights packed as 4 bits: K=1, Q=2, k=4, q=8
+    public static long castlingKey(Position position) {
+        int rights = 0;
+        if (position.whiteCanCastleKingside) rights |= 1;
+        if (position.whiteCanCastleQueenside) rights |= 2;
+        if (position.blackCanCastleKingside) rights |= 4;
+        if (position.blackCanCastleQueenside) rights |= 8;
+        return CASTLING_KEYS[rights];
+    }
+
+    public static long enPassantKey(int enPassantSquare) {
+        return enPassantSquare == -1 ? 0L : EN_PASSANT_KEYS[enPassantSquare % 8];
+    }
+
+
+    // Full hash from scratch. Position keeps its hash up to date incrementally,
+    // this is only used to set it up (and to check the incremental one when debugging).
+    public static long compute(Position position) {
+        long hash = 0L;
+        for (int square = 0; square < 64; square++) {
+            int piece = position.pieceAt(square);
+            if (piece != Piece.NONE) {
+                hash ^= pieceKey(piece, square);
+            }
+        }
+        hash ^= castlingKey(position);
+        hash ^= enPassantKey(position.enPassantSquare);
+        if (!position.isWhiteTurn) {
+            hash ^= SIDE_KEY;
+        }
+        return hash;
+    }
+}
@@ -1,11 +1,25 @@
 package gui;
 
+import engine.NnueNetwork;
+import engine.Search;
+
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 
 public class ChessApp {
 
     public static void main(String[] args) {
+        // java -Dnnue=<network file> ... plays with the NNUE evaluation
+        String nnueFile = System.getProperty("nnue");
+        if (nnueFile != null) {
+            try {
+                Search.useNetwork(NnueNetwork.load(nnueFile));
+            } catch (IOException e) {
+                System.err.println("Could not load " + nnueFile + ", using the classical evaluation: " + e.getMessage());
+            }
+        }
+
         boolean playerIsWhite = GameSetupDialog.askPlayerColor();
 
         ClockPanel topClock = new ClockPanel();
@@ -61,7 +61,11 @@ public class GameController {
                 }
                 // Search on a COPY, not the GUI's position!
                 Position searchPosition = new Position(currentFEN);
-                return Search.findBestMove(searchPosition, 3);
+
+                // Think time comes from what's left on the AI's clock
+                int remainingSeconds = playerIsWhite ? clock.getBlackTimeSeconds() : clock.getWhiteTimeSeconds();
+                long remainingMillis = remainingSeconds * 1000L;
+                return Search.findBestMoveInTime(searchPosition, Search.allocateTime(remainingMillis));
             }
 
             @Override
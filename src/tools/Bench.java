@@ -0,0 +1,131 @@
+package tools;
+
+import engine.Move;
+import engine.NnueNetwork;
+import engine.Position;
+import engine.Search;
+import engine.SearchStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Searches a fixed list of positions to a fixed depth, single threaded, each from an empty
+// hash table, and prints the total node count and speed. The search is deterministic, so the
+// node total is a signature of the search tree: a change that alters the tree (move ordering,
+// pruning, evaluation) changes the number, a change that only makes it faster or slower
+// changes just the NPS. Runs headless, nothing here touches the GUI.
+//
+// -nnue evaluates with a network file instead of the hand-written evaluation.
+//
+// Usage: java tools.Bench [-nnue file] [depth] [hash MB]
+public class Bench {
+
+    private static final int DEFAULT_DEPTH = 6;
+    private static final int DEFAULT_HASH_MB = 16;
+
+    private static final String[] FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 11",
+            "4rrk1/pp1n3p/3q2pQ/2p1pb2/2PP4/2P3N1/P2B2PP/4RRK1 b - - 7 19",
+            "rq3rk1/ppp2ppp/1bnpb3/3N2B1/3NP3/7P/PPPQ1PP1/2KR3R w - - 7 14",
+            "r1bq1r1k/1pp1n1pp/1p1p4/4p2Q/4Pp2/1BNP4/PPP2PPP/3R1RK1 w - - 2 14",
+            "r3r1k1/2p2ppp/p1p1bn2/8/1q2P3/2NPQN2/PPP3PP/R4RK1 b - - 2 15",
+            "r1bbk1nr/pp3p1p/2n5/1N4p1/2Np1B2/8/PPP2PPP/2KR1B1R w kq - 0 13",
+            "r1bq1rk1/ppp1nppp/4n3/3p3Q/3P4/1BP1B3/PP1N2PP/R4RK1 w - - 1 16",
+            "4r1k1/r1q2ppp/ppp2n2/4P3/5Rb1/1N1BQ3/PPP3PP/R5K1 w - - 1 17",
+            "2rqkb1r/ppp2p2/2npb1p1/1N1Nn2p/2P1PP2/8/PP2B1PP/R1BQK2R b KQ - 0 11",
+            "r1bq1r1k/b1p1npp1/p2p3p/1p6/3PP3/1B2NN2/PP3PPP/R2Q1RK1 w - - 1 16",
+            "3r1rk1/p5pp/bpp1pp2/8/q1PP1P2/b3P3/P2NQRPP/1R2B1K1 b - - 6 22",
+            "r1q2rk1/2p1bppp/2Pp4/p6b/Q1PNp3/4B3/PP1R1PPP/2K4R w - - 2 18",
+            "4k2r/1pb2ppp/1p2p3/1R1p4/3P4/2r1PN2/P4PPP/1R4K1 b - - 3 22",
+            "3q2k1/pb3p1p/4pbp1/2r5/PpN2N2/1P2P2P/5PP1/Q2R2K1 b - - 4 26",
+            "6k1/6p1/6Pp/ppp5/3pn2P/1P3K2/1PP2P2/8 b - - 0 1",
+            "8/8/8/8/5kp1/P7/8/1K1N4 w - - 0 1",
+            "8/8/8/5N2/8/p7/8/2NK3k w - - 0 1",
+            "8/3k4/8/8/8/4B3/4KB2/2B5 w - - 0 1",
+            "8/8/1P6/5pr1/8/4R3/7k/2K5 w - - 0 1",
+            "8/2p4P/8/kr6/6R1/8/8/1K6 w - - 0 1",
+            "8/8/3P3k/8/1p6/8/1P6/1K3n2 b - - 0 1",
+            "8/R7/2q5/8/6k1/8/1P5p/K6R w - - 0 124",
+            "6k1/3b3r/1p1p4/p1n2p2/1PPNpP1q/P3Q1p1/1R1RB1P1/5K2 b - - 0 1",
+            "r2r1n2/pp2bk2/2p1p2p/3q4/3PN1QP/2P3R1/P4PP1/5RK1 w - - 0 1",
+            "1r3k2/4q3/2Pp3b/3Bp3/2Q2p2/1p1P2P1/1P2KP2/3N4 w - - 0 1",
+            "3rr1k1/pp3pp1/1qn2np1/8/3p4/PP1R1P2/2P1NQPP/R1B3K1 b - - 0 1",
+            "2r1nrk1/p2q1ppp/bp1p4/n1pPp3/P1P1P3/2PBB1N1/4QPPP/R4RK1 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2Q1RK1 b - - 0 10",
+            "r1bq1rk1/pp3ppp/2nbpn2/3p4/2PP4/1PN1PN2/P4PPP/R1BQKB1R w KQ - 1 8",
+            "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/2N5/PPP2PPP/R1BQKB1R b KQkq - 2 5",
+            "r1bqk2r/pp2bppp/2n1pn2/2pp4/3P4/2PBPN2/PP1N1PPP/R1BQK2R w KQkq - 0 7",
+            "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+            "8/5pk1/6p1/8/3R4/6P1/5PKP/r7 b - - 0 40",
+            "8/8/1p3k2/p1p2p2/P1P2P2/1P3K2/8/8 w - - 0 45",
+            "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1",
+            "8/6pk/1p6/8/PP3p1p/5P2/4KP1q/3Q4 w - - 0 1",
+            "2K5/p7/7P/5pR1/8/5k2/r7/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) throws IOException {
+        String nnueFile = null;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-nnue")) {
+                nnueFile = args[++i];
+            } else {
+                rest.add(args[i]);
+            }
+        }
+        int depth = rest.size() > 0 ? Integer.parseInt(rest.get(0)) : DEFAULT_DEPTH;
+        int hashMb = rest.size() > 1 ? Integer.parseInt(rest.get(1)) : DEFAULT_HASH_MB;
+
+        if (nnueFile != null) {
+            Search.useNetwork(NnueNetwork.load(nnueFile));
+        }
+
+        // The node count depends on the table size and the thread count too, so both are fixed
+        Search.setThreads(1);
+        Search.setHashSizeMb(hashMb);
+
+        long totalNodes = 0;
+        long pawnHashProbes = 0;
+        long pawnHashHits = 0;
+        long evalCacheProbes = 0;
+        long evalCacheHits = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < FENS.length; i++) {
+            Search.clearHash();
+            Position position = new Position(FENS[i]);
+
+            long start = System.nanoTime();
+            Move best = Search.findBestMove(position, depth);
+            long nanos = System.nanoTime() - start;
+            long nodes = Search.getNodeCount();
+            SearchStats stats = Search.getLastStats();
+            pawnHashProbes += stats.pawnHashProbes;
+            pawnHashHits += stats.pawnHashHits;
+            evalCacheProbes += stats.evalCacheProbes;
+            evalCacheHits += stats.evalCacheHits;
+
+            totalNodes += nodes;
+            totalNanos += nanos;
+            System.out.printf("%2d/%d %10d nodes %8.1f ms  %-24s %s%n", i + 1, FENS.length, nodes,
+                    nanos / 1e6, best, FENS[i]);
+        }
+
+        System.out.println();
+        System.out.println("===========================");
+        System.out.printf("Evaluation      : %s%n", nnueFile != null ? "NNUE " + nnueFile : "classical");
+        System.out.printf("Depth           : %d%n", depth);
+        System.out.printf("Total time (ms) : %d%n", totalNanos / 1_000_000);
+        System.out.printf("Nodes searched  : %d%n", totalNodes);
+        System.out.printf("Nodes/second    : %d%n", totalNodes * 1_000_000_000L / Math.max(totalNanos, 1));
+        System.out.printf("Pawn hash hits  : %.1f%%%n", 100.0 * pawnHashHits / Math.max(pawnHashProbes, 1));
+        System.out.printf("Eval cache hits : %.1f%%%n", 100.0 * evalCacheHits / Math.max(evalCacheProbes, 1));
+    }
+}
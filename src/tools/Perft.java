@@ -0,0 +1,292 @@
+package tools;
+
+import engine.GameState;
+import engine.LocklessTable;
+import engine.MoveGenerator;
+import engine.MoveList;
+import engine.PackedMove;
+import engine.Piece;
+import engine.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Perft: counts the leaf nodes of the legal move tree to a fixed depth, to check the move
+// generator against known counts and to measure its speed. Divide prints the count under
+// every root move (in UCI notation, so it can be compared move by move with other engines).
+//
+// The last ply is counted in bulk: the number of legal moves is the number of leaves, they
+// are never played. -parallel splits the root moves over all cores (fork-join), -hash caches
+// subtree counts by Zobrist key and depth, so transpositions are only counted once.
+//
+// Usage: java tools.Perft [-parallel] [-hash MB] depth [fen]
+//        java tools.Perft [-parallel] [-hash MB] -suite [max depth]
+public class Perft {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // The usual reference positions with their known counts for depth 1, 2, ...
+    private static final String[] SUITE_FENS = {
+            START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+    private static final long[][] SUITE_COUNTS = {
+            {20, 400, 8_902, 197_281, 4_865_609, 119_060_324L},
+            {48, 2_039, 97_862, 4_085_603, 193_690_690L},
+            {14, 191, 2_812, 43_238, 674_624, 11_030_083L},
+            {6, 264, 9_467, 422_333, 15_833_292L},
+            {44, 1_486, 62_379, 2_103_487, 89_941_194L},
+            {46, 2_079, 89_890, 3_894_594, 164_075_551L},
+    };
+
+    private static final int MAX_DEPTH = 32;
+
+    // Per instance (so per thread) search stack, like in the search
+    private final Position position;
+    private final CountCache cache;
+    private final MoveList[] moveLists = new MoveList[MAX_DEPTH + 1];
+    private final GameState[] undoStack = new GameState[MAX_DEPTH + 1];
+
+
+    private Perft(Position position, CountCache cache) {
+        this.position = position;
+        this.cache = cache;
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            moveLists[depth] = new MoveList();
+            undoStack[depth] = new GameState();
+        }
+    }
+
+
+    public static void main(String[] args) {
+        boolean parallel = false;
+        boolean suite = false;
+        int hashMb = 0;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-parallel": parallel = true; break;
+                case "-suite": suite = true; break;
+                case "-hash": hashMb = Integer.parseInt(args[++i]); break;
+                default: rest.add(args[i]);
+            }
+        }
+
+        if (suite) {
+            int maxDepth = rest.isEmpty() ? 5 : Integer.parseInt(rest.get(0));
+            boolean allOk = runSuite(maxDepth, parallel, hashMb);
+            System.exit(allOk ? 0 : 1);
+        }
+
+        if (rest.isEmpty()) {
+            System.out.println("Usage: java tools.Perft [-parallel] [-hash MB] depth [fen]");
+            System.out.println("       java tools.Perft [-parallel] [-hash MB] -suite [max depth]");
+            return;
+        }
+        int depth = Integer.parseInt(rest.get(0));
+        String fen = rest.size() > 1 ? String.join(" ", rest.subList(1, rest.size())) : START_FEN;
+        divide(new Position(fen), depth, parallel, hashMb);
+    }
+
+
+    // Leaf count of the tree below the position, depth >= 1
+    public static long perft(Position position, int depth, boolean parallel, int hashMb) {
+        long[] counts = countRootMoves(position, depth, parallel, hashMb, new MoveList());
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+
+    private static void divide(Position position, int depth, boolean parallel, int hashMb) {
+        MoveList rootMoves = new MoveList();
+        long start = System.nanoTime();
+        long[] counts = countRootMoves(position, depth, parallel, hashMb, rootMoves);
+        long nanos = System.nanoTime() - start;
+
+        long total = 0;
+        for (int i = 0; i < rootMoves.size; i++) {
+            System.out.println(toUci(rootMoves.get(i)) + ": " + counts[i]);
+            total += counts[i];
+        }
+        System.out.println();
+        System.out.println("Moves: " + rootMoves.size);
+        System.out.println("Nodes: " + total);
+        printSpeed(total, nanos);
+    }
+
+
+    private static boolean runSuite(int maxDepth, boolean parallel, int hashMb) {
+        boolean allOk = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int p = 0; p < SUITE_FENS.length; p++) {
+            System.out.println(SUITE_FENS[p]);
+            int depthLimit = Math.min(maxDepth, SUITE_COUNTS[p].length);
+            for (int depth = 1; depth <= depthLimit; depth++) {
+                long expected = SUITE_COUNTS[p][depth - 1];
+                long start = System.nanoTime();
+                long nodes = perft(new Position(SUITE_FENS[p]), depth, parallel, hashMb);
+                long nanos = System.nanoTime() - start;
+                boolean ok = nodes == expected;
+                allOk &= ok;
+                totalNodes += nodes;
+                totalNanos += nanos;
+                System.out.printf("  depth %d %12d %s %8.1f ms%n", depth, nodes,
+                        ok ? "ok  " : "FAIL (expected " + expected + ")", nanos / 1e6);
+            }
+        }
+        System.out.println();
+        System.out.println(allOk ? "All counts match" : "MISMATCH");
+        printSpeed(totalNodes, totalNanos);
+        return allOk;
+    }
+
+
+    // Generates the root moves into rootMoves and returns the leaf count under each
+    private static long[] countRootMoves(Position position, int depth, boolean parallel, int hashMb,
+                                         MoveList rootMoves) {
+        MoveGenerator.generateLegalMoves(position, rootMoves);
+        CountCache cache = hashMb > 0 ? new CountCache(hashMb) : null;
+        long[] counts = new long[rootMoves.size];
+
+        if (depth <= 1) {
+            java.util.Arrays.fill(counts, 1);
+            return counts;
+        }
+
+        if (!parallel) {
+            Perft perft = new Perft(position, cache);
+            GameState saved = new GameState();
+            for (int i = 0; i < rootMoves.size; i++) {
+                position.makeMove(rootMoves.get(i), saved);
+                counts[i] = perft.count(depth - 1);
+                position.unmakeMove(rootMoves.get(i), saved);
+            }
+            return counts;
+        }
+
+        // One task per root move, every task on its own copy of the position
+        List<RootMoveTask> tasks = new ArrayList<>();
+        for (int i = 0; i < rootMoves.size; i++) {
+            tasks.add(new RootMoveTask(position, rootMoves.get(i), depth - 1, cache));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (int i = 0; i < rootMoves.size; i++) {
+            counts[i] = tasks.get(i).join();
+        }
+        return counts;
+    }
+
+
+    private long count(int depth) {
+        // A hit saves generating the moves too
+        if (cache != null && depth >= 2) {
+            long cached = cache.probe(position.hash, depth);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
+
+        MoveList moves = moveLists[depth];
+        moves.clear();
+        MoveGenerator.generateLegalMoves(position, moves);
+        if (depth == 1) {
+            return moves.size;  // bulk counting: the leaves are just the legal moves
+        }
+
+        long nodes = 0;
+        GameState saved = undoStack[depth];
+        for (int i = 0; i < moves.size; i++) {
+            int move = moves.get(i);
+            position.makeMove(move, saved);
+            nodes += count(depth - 1);
+            position.unmakeMove(move, saved);
+        }
+
+        if (cache != null) {
+            cache.store(position.hash, depth, nodes);
+        }
+        return nodes;
+    }
+
+
+    private static class RootMoveTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position position;
+        private final int move;
+        private final int depth;
+        private final CountCache cache;
+
+        RootMoveTask(Position position, int move, int depth, CountCache cache) {
+            this.position = new Position(position);
+            this.move = move;
+            this.depth = depth;
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long compute() {
+            position.makeMove(move, new GameState());
+            return new Perft(position, cache).count(depth);
+        }
+    }
+
+
+    // Subtree counts by position and depth, shared by all threads (see LocklessTable).
+    // Stored plus one, so a count of 0 isn't taken for a miss.
+    private static class CountCache extends LocklessTable {
+        private static final long[] DEPTH_KEYS = new long[MAX_DEPTH + 1];
+
+        static {
+            Random random = new Random(0x9E3779B9L);
+            for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+                DEPTH_KEYS[depth] = random.nextLong();
+            }
+        }
+
+        CountCache(int sizeMb) {
+            super((long) sizeMb * 1024 * 1024 / 16);
+        }
+
+        // -1 if not there
+        long probe(long hash, int depth) {
+            return probe(hash ^ DEPTH_KEYS[depth]) - 1;
+        }
+
+        void store(long hash, int depth, long count) {
+            store(hash ^ DEPTH_KEYS[depth], count + 1);
+        }
+    }
+
+
+    // e.g. e2e4, e7e8q
+    private static String toUci(int move) {
+        String uci = square(PackedMove.from(move)) + square(PackedMove.to(move));
+        if (PackedMove.isPromotion(move)) {
+            uci += Character.toLowerCase(Piece.toChar(PackedMove.promotionPiece(move)));
+        }
+        return uci;
+    }
+
+    private static String square(int square) {
+        return "" + (char) ('a' + square % 8) + (square / 8 + 1);
+    }
+
+
+    private static void printSpeed(long nodes, long nanos) {
+        double millis = nanos / 1e6;
+        System.out.printf("Time: %.1f ms%n", millis);
+        System.out.printf("NPS: %.0f%n", nodes / Math.max(nanos / 1e9, 1e-9));
+    }
+}
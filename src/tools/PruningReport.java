@@ -0,0 +1,57 @@
+package tools;
+
+import engine.Position;
+import engine.Search;
+import engine.SearchStats;
+
+// Searches a few positions to a fixed depth with all forward pruning on, with
+// everything off, and with each technique switched off alone, and prints the
+// node counts, effective branching factor and per-technique counters.
+//
+// Usage: java tools.PruningReport [depth]
+public class PruningReport {
+
+    private static final String[] FENS = {
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2Q1RK1 b - - 0 10",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+
+        run("all on", depth, true, true, true, true);
+        run("all off", depth, false, false, false, false);
+        run("no null move", depth, false, true, true, true);
+        run("no LMR", depth, true, false, true, true);
+        run("no futility", depth, true, true, false, true);
+        run("no razoring", depth, true, true, true, false);
+    }
+
+
+    private static void run(String name, int depth, boolean nullMove, boolean lmr, boolean futility, boolean razoring) {
+        Search.useNullMove = nullMove;
+        Search.useLateMoveReductions = lmr;
+        Search.useFutilityPruning = futility;
+        Search.useRazoring = razoring;
+
+        System.out.println("== " + name + " (depth " + depth + ")");
+        long totalNodes = 0;
+        long start = System.currentTimeMillis();
+        for (String fen : FENS) {
+            Search.clearHash();
+            Search.findBestMove(new Position(fen), depth);
+            SearchStats stats = Search.getLastStats();
+            totalNodes += stats.nodes;
+            System.out.println(stats);
+        }
+        System.out.println("total nodes " + totalNodes + " in " + (System.currentTimeMillis() - start) + "ms");
+        System.out.println();
+
+        Search.useNullMove = true;
+        Search.useLateMoveReductions = true;
+        Search.useFutilityPruning = true;
+        Search.useRazoring = true;
+    }
+}
@@ -0,0 +1,53 @@
+package tools;
+
+import engine.Position;
+import engine.Search;
+
+import java.lang.management.ManagementFactory;
+
+// Counts the bytes the search allocates per node, to check that the search stack
+// really is allocation free. Every position is searched once to warm up (class init,
+// JIT), then again with the thread's allocation counter running.
+// What is left is the per search setup (root moves, thread state), not per node.
+//
+// Usage: java tools.SearchAllocation [depth] [fen ...]
+public class SearchAllocation {
+
+    private static final String[] DEFAULT_FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        String[] fens = args.length > 1 ? java.util.Arrays.copyOfRange(args, 1, args.length) : DEFAULT_FENS;
+
+        // The HotSpot extension can count the bytes allocated by one thread
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Search.setThreads(1);
+
+        long totalBytes = 0;
+        long totalNodes = 0;
+        System.out.printf("%10s %14s %10s  %s%n", "nodes", "allocated", "bytes/node", "position");
+        for (String fen : fens) {
+            Search.clearHash();
+            Search.findBestMove(new Position(fen), depth);
+
+            Search.clearHash();
+            Position position = new Position(fen);
+            long before = threads.getThreadAllocatedBytes(threadId);
+            Search.findBestMove(position, depth);
+            long bytes = threads.getThreadAllocatedBytes(threadId) - before;
+            long nodes = Search.getNodeCount();
+
+            System.out.printf("%10d %14d %10.3f  %s%n", nodes, bytes, (double) bytes / nodes, fen);
+            totalBytes += bytes;
+            totalNodes += nodes;
+        }
+        System.out.printf("%10d %14d %10.3f  total%n", totalNodes, totalBytes, (double) totalBytes / totalNodes);
+    }
+}
@@ -0,0 +1,69 @@
+package tools;
+
+import engine.Position;
+import engine.Search;
+
+// Measures the Lazy SMP speedup: searches the same positions to a fixed depth
+// with 1 thread and with N threads and compares the time to reach each depth.
+//
+// Usage: java tools.SmpSpeedup [threads] [depth] [fen ...]
+public class SmpSpeedup {
+
+    private static final String[] DEFAULT_FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        String[] fens = args.length > 2 ? java.util.Arrays.copyOfRange(args, 2, args.length) : DEFAULT_FENS;
+
+        double[] singleTotal = new double[depth + 1];
+        double[] parallelTotal = new double[depth + 1];
+
+        for (String fen : fens) {
+            System.out.println(fen);
+            double[] single = timeToDepth(fen, 1, depth);
+            double[] parallel = timeToDepth(fen, threads, depth);
+            printTable(single, parallel, threads);
+            for (int d = 1; d <= depth; d++) {
+                singleTotal[d] += single[d];
+                parallelTotal[d] += parallel[d];
+            }
+            System.out.println();
+        }
+
+        System.out.println("Total over " + fens.length + " positions");
+        printTable(singleTotal, parallelTotal, threads);
+    }
+
+
+    private static double[] timeToDepth(String fen, int threads, int depth) {
+        // Every run starts from an empty hash table, otherwise the second run gets a head start
+        Search.clearHash();
+        Search.setThreads(threads);
+        Search.findBestMove(new Position(fen), depth);
+        Search.setThreads(1);
+
+        double[] times = new double[depth + 1];
+        for (int d = 1; d <= depth; d++) {
+            times[d] = Search.getTimeToDepthMillis(d);
+        }
+        return times;
+    }
+
+
+    private static void printTable(double[] single, double[] parallel, int threads) {
+        System.out.printf("%5s %12s %12s %8s%n", "depth", "1 thread", threads + " threads", "speedup");
+        for (int d = 1; d < single.length; d++) {
+            // Helper threads may skip a depth, only compare depths both runs reached
+            if (single[d] <= 0 || parallel[d] <= 0) {
+                continue;
+            }
+            System.out.printf("%5d %10.1fms %10.1fms %7.2fx%n", d, single[d], parallel[d], single[d] / parallel[d]);
+        }
+    }
+}